@@ -11,6 +11,7 @@ package org.avk.ants;
  * Notes
  * This class represents velocity as a <code>double</code>, even though
  * the original problem only has velocities of +1 or -1.
+ * Ants with different speeds are simulated by <code>KineticSimulation</code>.
  * 
  * @author Andrew Klein
  */
@@ -79,7 +80,7 @@ public class Ant implements Comparable<Ant> {
 	 * Enables us to sort Ants by location
 	 */
 	public int compareTo(Ant otherAnt) { 
-		return (int)Math.signum(getX() - otherAnt.getX()); 
+		return Double.compare(getX(), otherAnt.getX()); 
 	}
 	
 	/**
@@ -116,9 +117,10 @@ public class Ant implements Comparable<Ant> {
 	 * If the ants are moving in the same direction then
 	 * there won't be a collision. Indicate this by
 	 * returning a large negative number.
+	 * To follow the collisions of many Ants over time,
+	 * see <code>CollisionScheduler</code>.
 	 */
 	public double timeToCollision(Ant otherAnt) {
-		double epsV = 0.001;
 		double deltaV = otherAnt.getV() - getV() ;
 		double deltaX = otherAnt.getX() - getX();
 		if( Math.abs(deltaV) < epsV ) {
@@ -0,0 +1,263 @@
+package org.avk.ants;
+
+/**
+ * A whole population of Ants, stored as parallel primitive arrays.
+ *
+ * An <code>Ant</code> object carries a <code>String</code> name and a
+ * <code>Boolean</code>, and a <code>List&lt;Ant&gt;</code> adds a pointer per ant.
+ * Here ant <code>i</code> is just <code>ids[i]</code>, <code>x[i]</code>,
+ * <code>v[i]</code> and membership of the <code>LiveSet</code>,
+ * and the methods mirror those of <code>Ant</code> with an index added.
+ * There are also bulk operations that act on all live ants at once,
+ * which, like a walk over <code>getLiveSet</code>, take time in
+ * proportion to the number of live ants only.
+ */
+public class AntPopulation {
+	private final int[] ids;
+	private final double[] x;
+	private final double[] v;
+	private final LiveSet alive;
+	private int size;
+
+	/**
+	 * @param capacity the maximum number of ants
+	 */
+	public AntPopulation(int capacity) {
+		this.ids = new int[capacity];
+		this.x = new double[capacity];
+		this.v = new double[capacity];
+		this.alive = new LiveSet(capacity);
+		this.size = 0;
+	}
+
+	/**
+	 * Add a live ant.
+	 *
+	 * @return the index of the new ant
+	 */
+	public int add(int id, double position, double velocity) {
+		ids[size] = id;
+		x[size] = position;
+		v[size] = velocity;
+		alive.add(size);
+		return size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getId(int i) {
+		return ids[i];
+	}
+	public double getX(int i) {
+		return x[i];
+	}
+	public void setX(int i, double newPosition) {
+		x[i] = newPosition;
+	}
+	public double getV(int i) {
+		return v[i];
+	}
+
+	public void disable(int i) {
+		alive.remove(i);
+	}
+	public void enable(int i) {
+		alive.add(i);
+	}
+	public boolean isAlive(int i) {
+		return alive.contains(i);
+	}
+	public int aliveCount() {
+		return alive.size();
+	}
+
+	/**
+	 * The live ants, for walking over them in order of index
+	 */
+	public LiveSet getLiveSet() {
+		return alive;
+	}
+
+	/**
+	 * Same as <code>Ant.simpleMove</code>
+	 */
+	public void simpleMove(int i, double t) {
+		x[i] = x[i] + t*v[i];
+	}
+
+	public void reflect(int i) {
+		v[i] = -v[i];
+	}
+
+	/**
+	 * Same as <code>Ant.isTouching</code>
+	 */
+	public boolean isTouching(int i, int j) {
+		return Math.abs(x[j] - x[i]) < Ant.epsX;
+	}
+
+	/**
+	 * Move every live ant, ignoring the possibility of a collision.
+	 *
+	 * @param t is the time (in seconds) to allow the ants to move
+	 */
+	public void moveAll(double t) {
+		for( int k=0, n=alive.entryCount(); k<n; k++ ) {
+			int i = alive.entry(k);
+			if( alive.contains(i) ) {
+				x[i] = x[i] + t*v[i];
+			}
+		}
+	}
+
+	/**
+	 * Two ants have collided; reverse both of them.
+	 */
+	public void reflectPair(int i, int j) {
+		v[i] = -v[i];
+		v[j] = -v[j];
+	}
+
+	/**
+	 * Keep the live ants in order of position after ant i has moved,
+	 * once ant i-1 has moved as well.
+	 *
+	 * If ant i has landed on ant i-1 heading the other way, the two have
+	 * collided and both turn around. If it has passed ant i-1, they met
+	 * in mid-step and turned around there: ant i-1 takes the position
+	 * behind and ant i the one ahead, both reversed. Such a swap may put
+	 * ant i-1 behind ant i-2 when several ants share a spot, so it is
+	 * repeated towards the start until the order holds. Ants never pass
+	 * one another otherwise, so checking each ant against the one before
+	 * it keeps the population sorted at O(1) per ant, and it never needs
+	 * to be sorted again.
+	 *
+	 * @param i a live ant that has just moved
+	 * @return the number of collisions
+	 */
+	public int keepOrder(int i) {
+		if( i == 0 || !alive.contains(i-1) ) {
+			return 0;
+		}
+		if( isTouching(i-1, i) ) {
+			if( v[i] != v[i-1] ) {
+				reflectPair(i-1, i);
+				return 1;
+			}
+			return 0;
+		}
+		int nCollisions = 0;
+		for( int j=i; j>0 && alive.contains(j-1) && x[j] < x[j-1]; j-- ) {
+			double behind = x[j];
+			x[j] = x[j-1];
+			x[j-1] = behind;
+			reflectPair(j-1, j);
+			nCollisions++;
+		}
+		return nCollisions;
+	}
+
+	/**
+	 * Are the live ants in order of position?
+	 */
+	public boolean isSorted() {
+		int previous = -1;
+		for( int k=0, n=alive.entryCount(); k<n; k++ ) {
+			int i = alive.entry(k);
+			if( !alive.contains(i) ) {
+				continue;
+			}
+			if( previous >= 0 && x[i] < x[previous] ) {
+				return false;
+			}
+			previous = i;
+		}
+		return true;
+	}
+
+	/**
+	 * Disable every live ant that is no longer on the stick.
+	 *
+	 * @param stickLength in cm.
+	 * @return the number of ants disabled
+	 */
+	public int sweepDead(double stickLength) {
+		int nSwept = 0;
+		for( int k=0, n=alive.entryCount(); k<n; k++ ) {
+			int i = alive.entry(k);
+			if( alive.contains(i) && (x[i] < 0.0 || x[i] > stickLength) ) {
+				alive.remove(i);
+				nSwept++;
+			}
+		}
+		return nSwept;
+	}
+
+	/**
+	 * Put the ants in order of position, the way
+	 * <code>Collections.sort</code> orders a list of Ants:
+	 * a stable sort, comparing positions as primitives.
+	 */
+	public void sortByPosition() {
+		int[] order = new int[size];
+		int[] scratch = new int[size];
+		for( int i=0; i<size; i++ ) {
+			order[i] = i;
+		}
+		mergeSort(order, scratch, 0, size);
+
+		int[] oldIds = ids.clone();
+		double[] oldX = x.clone();
+		double[] oldV = v.clone();
+		boolean[] oldAlive = new boolean[size];
+		for( int i=0; i<size; i++ ) {
+			oldAlive[i] = alive.contains(i);
+		}
+		alive.clear();
+		for( int i=0; i<size; i++ ) {
+			int k = order[i];
+			ids[i] = oldIds[k];
+			x[i] = oldX[k];
+			v[i] = oldV[k];
+			if( oldAlive[k] ) {
+				alive.add(i);
+			}
+		}
+	}
+
+	/**
+	 * Stable merge sort of the indices in <code>order[from, to)</code> by position.
+	 */
+	private void mergeSort(int[] order, int[] scratch, int from, int to) {
+		if( to - from < 2 ) {
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		mergeSort(order, scratch, from, middle);
+		mergeSort(order, scratch, middle, to);
+		System.arraycopy(order, from, scratch, from, to - from);
+		int iLeft = from;
+		int iRight = middle;
+		for( int i=from; i<to; i++ ) {
+			if( iRight >= to
+					|| (iLeft < middle && x[scratch[iLeft]] <= x[scratch[iRight]]) ) {
+				order[i] = scratch[iLeft++];
+			} else {
+				order[i] = scratch[iRight++];
+			}
+		}
+	}
+
+	/**
+	 * Same layout as <code>Ant.toString</code>
+	 */
+	public String toString(int i) {
+		String aliveLabel = " ";
+		if( !isAlive(i) ) {
+			aliveLabel = "dead";
+		}
+		return String.format("%2d      %4.1f    %4.1f %s", ids[i], x[i], v[i], aliveLabel);
+	}
+}
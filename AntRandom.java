@@ -0,0 +1,106 @@
+package org.avk.ants;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * The random number generator of all the simulators: SplitMix64.
+ *
+ * The state is a single <code>long</code> that advances by a fixed odd
+ * constant, <code>GAMMA</code>, on every draw, and each output is that
+ * state passed through the <code>mix64</code> finalizer. That makes it
+ * cheap to reproduce any part of a campaign:
+ * <ul>
+ * <li>run k of the campaign with seed s draws from its own stream,
+ * <code>forRun(s, k)</code>, which takes O(1) to set up, so any run can be
+ * regenerated by itself, in any thread, in any order;</li>
+ * <li><code>jump(n)</code> skips the next n draws of a stream in O(1);</li>
+ * <li><code>getState</code> and <code>setState</code> save and restore a stream exactly.</li>
+ * </ul>
+ * Unlike <code>Math.random()</code> there is no shared generator and no
+ * synchronization; give each thread its own <code>AntRandom</code>.
+ *
+ * It implements <code>java.util.random.RandomGenerator</code>, so
+ * <code>nextDouble</code>, <code>nextBoolean</code> and the bounded
+ * draws are the standard derivations from <code>nextLong</code>, and the
+ * simulators accept any other <code>RandomGenerator</code> as well.
+ */
+public class AntRandom implements RandomGenerator {
+
+	/**
+	 * The increment of the state per draw: 2^64 divided by the golden ratio, made odd
+	 */
+	static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+	/**
+	 * Identifies the generator, for results that depend on the exact numbers drawn
+	 */
+	public static final String NAME = "splitmix64";
+
+	private long state;
+
+	public AntRandom(long seed) {
+		this.state = seed;
+	}
+
+	/**
+	 * The stream of run <code>runIndex</code> of the campaign identified by <code>seed</code>
+	 */
+	public static AntRandom forRun(long seed, long runIndex) {
+		return new AntRandom(runSeed(seed, runIndex));
+	}
+
+	/**
+	 * Switch this generator to the stream of run <code>runIndex</code>;
+	 * lets a thread reuse one generator for all its runs.
+	 *
+	 * @return this generator
+	 */
+	public AntRandom setRun(long seed, long runIndex) {
+		state = runSeed(seed, runIndex);
+		return this;
+	}
+
+	/**
+	 * The initial state of the stream of run <code>runIndex</code>.
+	 * The streams of neighboring runs start at unrelated points of the
+	 * 2^64-long cycle.
+	 */
+	static long runSeed(long seed, long runIndex) {
+		return mix64(seed + (runIndex + 1) * GAMMA);
+	}
+
+	/**
+	 * The SplitMix64 finalizer; neighboring inputs give unrelated outputs.
+	 */
+	static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	@Override
+	public long nextLong() {
+		state += GAMMA;
+		return mix64(state);
+	}
+
+	/**
+	 * Skip the next <code>n</code> draws of <code>nextLong</code>, as if
+	 * they had been made. A <code>nextDouble</code>, <code>nextBoolean</code>
+	 * or <code>nextInt</code> is one draw; bounded draws may take more than one.
+	 */
+	public void jump(long n) {
+		state += n * GAMMA;
+	}
+
+	/**
+	 * The current state; <code>setState</code> with it continues from here
+	 */
+	public long getState() {
+		return state;
+	}
+
+	public void setState(long state) {
+		this.state = state;
+	}
+}
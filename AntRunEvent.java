@@ -0,0 +1,35 @@
+package org.avk.ants;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * One simulation run, as a JDK Flight Recorder event. Committed by
+ * <code>RunMetrics</code> when <code>-Dants.metrics=true</code>; record with
+ * <code>-XX:StartFlightRecording</code> and look for org.avk.ants.Run.
+ */
+@Name("org.avk.ants.Run")
+@Label("Ant Simulation Run")
+@Category("Ants")
+@Description("Counters of one run of an ant simulation")
+class AntRunEvent extends Event {
+
+	@Label("Steps")
+	@Description("Time steps, or events for the event-driven engines")
+	long steps;
+
+	@Label("Collisions")
+	long collisions;
+
+	@Label("Last Lifetime")
+	@Description("Simulation time at which the last ant fell off, in seconds")
+	double lastLifetime;
+
+	@Label("Duration")
+	@Timespan(Timespan.NANOSECONDS)
+	long nanos;
+}
@@ -0,0 +1,306 @@
+package org.avk.ants;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Ants in a world with a pluggable <code>Topology</code>: on a stick,
+ * on a ring where they never fall off, or on a plane, bounded by walls
+ * or wrapping around.
+ *
+ * Unlike <code>Ant</code>, an ant here is a small disk of radius
+ * <code>radius</code> with a 2-dimensional velocity; in a 1-dimensional
+ * world every y is 0. Two ants collide when their disks overlap while
+ * they are approaching each other, and the collision is elastic between
+ * equal masses: the ants exchange the components of their velocities
+ * along the line between their centers. On a line, with equal speeds,
+ * that is the same as both ants reversing, as in the other simulators.
+ *
+ * Each step moves every live ant, lets the topology deal with the edges,
+ * and then finds the overlapping pairs with a <code>SpatialHashGrid</code>
+ * whose cells are one ant diameter across, so only ants in neighboring
+ * cells are compared and a step costs O(n) for evenly spread ants.
+ */
+public class AntWorld {
+
+	private final Topology topology;
+	private final int capacity;
+	private final double radius;
+	private final double[] x;
+	private final double[] y;
+	private final double[] vx;
+	private final double[] vy;
+	private final boolean[] alive;
+	private final SpatialHashGrid grid;
+	// The distinct buckets of the cells around an ant
+	private final int[] neighborBuckets = new int[9];
+	private int size;
+	private int aliveCount;
+	private long collisionCount;
+	private double simTime;
+
+	/**
+	 * @param topology
+	 * @param capacity the maximum number of ants
+	 * @param radius of an ant; on a line, <code>Ant.epsX/2</code> gives the usual collisions
+	 */
+	public AntWorld(Topology topology, int capacity, double radius) {
+		this.topology = topology;
+		this.capacity = capacity;
+		this.radius = radius;
+		this.x = new double[capacity];
+		this.y = new double[capacity];
+		this.vx = new double[capacity];
+		this.vy = new double[capacity];
+		this.alive = new boolean[capacity];
+		this.grid = new SpatialHashGrid(capacity, 2.0*radius, topology);
+		this.size = 0;
+		this.aliveCount = 0;
+		this.collisionCount = 0;
+		this.simTime = 0.0;
+	}
+
+	/**
+	 * Ants on a ring, at unique whole-number positions, heading either way
+	 * at <code>antSpeed</code>.
+	 */
+	public static AntWorld randomRing(int numberOfAnts, double circumference, double antSpeed,
+			RandomGenerator r) {
+		AntWorld world = new AntWorld(Topology.ring(circumference), numberOfAnts, 0.5*Ant.epsX);
+		// Positions 0 and circumference are the same spot on a ring
+		double[] positions = ProceduralAnts.initializePositions(circumference - 1.0, numberOfAnts, r);
+		double[] velocities = ProceduralAnts.initializeVelocities(antSpeed, numberOfAnts, r);
+		for( int i=0; i<numberOfAnts; i++ ) {
+			world.add(positions[i], 0.0, velocities[i], 0.0);
+		}
+		return world;
+	}
+
+	/**
+	 * Ants spread uniformly over a plane, heading in random directions
+	 * at <code>antSpeed</code>. Overlapping ants are allowed at the start;
+	 * they separate on their own, or collide, once they approach.
+	 */
+	public static AntWorld randomPlane(Topology topology, int numberOfAnts, double radius,
+			double antSpeed, RandomGenerator r) {
+		AntWorld world = new AntWorld(topology, numberOfAnts, radius);
+		for( int i=0; i<numberOfAnts; i++ ) {
+			double angle = 2.0 * Math.PI * r.nextDouble();
+			world.add(r.nextDouble() * topology.getWidth(), r.nextDouble() * topology.getHeight(),
+					antSpeed * Math.cos(angle), antSpeed * Math.sin(angle));
+		}
+		return world;
+	}
+
+	/**
+	 * Add a live ant.
+	 *
+	 * @return the index of the new ant
+	 */
+	public int add(double x, double y, double vx, double vy) {
+		if( size == capacity ) {
+			throw new IllegalStateException("The world is full");
+		}
+		this.x[size] = x;
+		this.y[size] = y;
+		this.vx[size] = vx;
+		this.vy[size] = vy;
+		this.alive[size] = true;
+		aliveCount++;
+		return size++;
+	}
+
+	/**
+	 * Move every live ant for <code>timeStep</code> seconds and carry out
+	 * the collisions among them.
+	 *
+	 * @return the number of collisions in this step
+	 */
+	public int step(double timeStep) {
+		for( int i=0; i<size; i++ ) {
+			if( alive[i] ) {
+				x[i] += timeStep*vx[i];
+				y[i] += timeStep*vy[i];
+				if( !topology.confine(x, y, vx, vy, i) ) {
+					alive[i] = false;
+					aliveCount--;
+				}
+			}
+		}
+		simTime += timeStep;
+
+		grid.build(x, y, alive, size);
+		double minDistance2 = 4.0*radius*radius;
+		int nCollisions = 0;
+		for( int i=0; i<size; i++ ) {
+			if( !alive[i] ) {
+				continue;
+			}
+			int nBuckets = findNeighborBuckets(i);
+			for( int k=0; k<nBuckets; k++ ) {
+				int b = neighborBuckets[k];
+				for( int e=grid.bucketStart(b); e<grid.bucketEnd(b); e++ ) {
+					int j = grid.entry(e);
+					if( j <= i ) {
+						// Each pair is examined from its lower index only
+						continue;
+					}
+					double dx = topology.dx(x[i], x[j]);
+					double dy = topology.dy(y[i], y[j]);
+					double d2 = dx*dx + dy*dy;
+					if( d2 >= minDistance2 || d2 == 0.0 && vx[i] == vx[j] && vy[i] == vy[j] ) {
+						continue;
+					}
+					if( collide(i, j, dx, dy, d2) ) {
+						nCollisions++;
+					}
+				}
+			}
+		}
+		collisionCount += nCollisions;
+		return nCollisions;
+	}
+
+	/**
+	 * Elastic collision of equal masses, if ants i and j are approaching.
+	 * <code>(dx, dy)</code> is the displacement from i to j.
+	 */
+	private boolean collide(int i, int j, double dx, double dy, double d2) {
+		double dvx = vx[j] - vx[i];
+		double dvy = vy[j] - vy[i];
+		if( d2 == 0.0 ) {
+			// Same spot: the line of centers is the relative velocity
+			dx = -dvx;
+			dy = -dvy;
+			d2 = dx*dx + dy*dy;
+		}
+		double approach = dvx*dx + dvy*dy;
+		if( approach >= 0.0 ) {
+			// Moving apart already
+			return false;
+		}
+		double scale = approach / d2;
+		vx[i] += scale*dx;
+		vy[i] += scale*dy;
+		vx[j] -= scale*dx;
+		vy[j] -= scale*dy;
+		return true;
+	}
+
+	/**
+	 * Fill <code>neighborBuckets</code> with the distinct buckets of the
+	 * 3 x 3 cells around ant i.
+	 *
+	 * @return the number of buckets
+	 */
+	private int findNeighborBuckets(int i) {
+		long cx = grid.cellX(x[i]);
+		long cy = grid.cellY(y[i]);
+		int n = 0;
+		for( long ix=cx-1; ix<=cx+1; ix++ ) {
+			for( long iy=cy-1; iy<=cy+1; iy++ ) {
+				int b = grid.bucket(ix, iy);
+				boolean seen = false;
+				for( int k=0; k<n; k++ ) {
+					seen |= neighborBuckets[k] == b;
+				}
+				if( !seen ) {
+					neighborBuckets[n++] = b;
+				}
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Offer the current positions to a <code>VisualizerServer</code>,
+	 * which takes a frame only now and then.
+	 */
+	public void publishTo(VisualizerServer server) {
+		if( server.wantsFrame() ) {
+			server.publish(simTime, topology.getWidth(), topology.getHeight(), x,
+					topology.getHeight() > 0.0 ? y : null, alive, size);
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+	public int aliveCount() {
+		return aliveCount;
+	}
+	public long getCollisionCount() {
+		return collisionCount;
+	}
+	public double getTime() {
+		return simTime;
+	}
+	public boolean isAlive(int i) {
+		return alive[i];
+	}
+	public double getX(int i) {
+		return x[i];
+	}
+	public double getY(int i) {
+		return y[i];
+	}
+	public double getVx(int i) {
+		return vx[i];
+	}
+	public double getVy(int i) {
+		return vy[i];
+	}
+
+	/**
+	 * @param args ring numberOfAnts circumference nSteps, or
+	 * plane|torus numberOfAnts width height radius nSteps
+	 */
+	public static void main(String[] args) {
+		boolean ring = args.length >= 1 && args[0].equalsIgnoreCase("ring");
+		boolean plane = args.length >= 1
+				&& (args[0].equalsIgnoreCase("plane") || args[0].equalsIgnoreCase("torus"));
+		if( !(ring && args.length >= 4) && !(plane && args.length >= 6) ) {
+			System.out.println("Usage: AntWorld ring numberOfAnts circumference nSteps");
+			System.out.println("       AntWorld plane|torus numberOfAnts width height radius nSteps");
+			return;
+		}
+		AntRandom r = new AntRandom(31103);
+		double antSpeed = 1.0;
+		double timeStep = 0.5;
+		int numberOfAnts = Integer.parseInt(args[1]);
+		AntWorld world;
+		long nSteps;
+		if( ring ) {
+			world = randomRing(numberOfAnts, Double.parseDouble(args[2]), antSpeed, r);
+			nSteps = Long.parseLong(args[3]);
+		} else {
+			double width = Double.parseDouble(args[2]);
+			double height = Double.parseDouble(args[3]);
+			Topology topology = args[0].equalsIgnoreCase("torus")
+					? Topology.torus(width, height) : Topology.box(width, height);
+			world = randomPlane(topology, numberOfAnts, Double.parseDouble(args[4]),
+					antSpeed, r);
+			nSteps = Long.parseLong(args[5]);
+		}
+
+		System.out.format("Created %d ants in a %s world\n", numberOfAnts, args[0]);
+		// -Dants.trajectory=live shows the world in a browser
+		VisualizerServer live = null;
+		if( TrajectorySink.kindFromProperties().equalsIgnoreCase("live") ) {
+			live = VisualizerServer.getInstance();
+		}
+		long startTime = System.nanoTime();
+		for( long step=0; step<nSteps; step++ ) {
+			world.step(timeStep);
+			if( live != null ) {
+				world.publishTo(live);
+			}
+		}
+		long elapsed = System.nanoTime() - startTime;
+		System.out.format("After %.1f sec.: %d collisions, %d ants left, %.0f ns/step\n",
+				world.getTime(), world.getCollisionCount(), world.aliveCount(),
+				elapsed / (double)Math.max(nSteps, 1));
+		if( live != null ) {
+			live.finish();
+		}
+	}
+}
@@ -0,0 +1,279 @@
+package org.avk.ants;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * The fixed time step simulation of <code>ProceduralAnts.doSimulation</code>
+ * for many independent sticks at once.
+ *
+ * With a handful of ants per stick, a single run spends most of its time
+ * entering and leaving loops and taking branches. Here the arrays are
+ * stored ant by ant across the sticks: ant i of stick b is
+ * <code>x[i*capacity + b]</code> (and likewise for the velocities), so
+ * row i holds ant i of every stick. A time step is the passes of
+ * <code>SteppingKernel</code>, each one a branch-free loop along a row:
+ * move every ant, mark the pairs that have just collided, and reverse
+ * them. Neighbors are a row apart, so the collision passes compare
+ * elements <code>capacity</code> apart, and the kernel handles as many
+ * sticks per instruction as the hardware allows.
+ *
+ * There are no <code>iMin/iMax</code> windows. An ant that has fallen off
+ * keeps moving away from the stick and never collides again, so it does
+ * not change the outcome; the batch stops once no stick has an ant left
+ * on it. Each stick gets exactly the same ants, and the same outcome, as
+ * <code>ProceduralAnts.doRun</code> with the STEPPED engine and the same
+ * generator. A batch is not thread-safe.
+ */
+public class BatchSimulation {
+
+	// Sticks per batch when there is no reason to choose otherwise
+	public static final int DEFAULT_CAPACITY = 256;
+
+	// Steps between checks for sticks with ants still on them
+	static final int CHECK_INTERVAL = 8;
+
+	private final int capacity;
+	private final int numberOfAnts;
+	private final double stickLength;
+	private final double antSpeed;
+
+	// Ant i of stick b is element i*capacity + b
+	private final double[] x;
+	private final double[] v;
+	private final double[] originalV;
+	// Row i is set where ants i-1 and i have just collided; rows 0 and numberOfAnts stay clear
+	private final double[] hit;
+	private final double[] positions;
+	private final PositionSampler sampler;
+	private final SteppingKernel kernel;
+	private int nSticks;
+
+	// Only with RunMetrics.ENABLED: the state before the current step,
+	// when each ant fell off, and the steps and collisions of each stick
+	private final double[] xBefore;
+	private final double[] vBefore;
+	private final double[] fellOffAt;
+	private final long[] stepCounts;
+	private final long[] collisionCounts;
+
+	/**
+	 * @param capacity the maximum number of sticks in the batch
+	 * @param numberOfAnts per stick
+	 * @param stickLength
+	 * @param antSpeed
+	 */
+	public BatchSimulation(int capacity, int numberOfAnts, double stickLength, double antSpeed) {
+		this.sampler = PositionSampler.forStick(stickLength, numberOfAnts);
+		this.kernel = SteppingKernel.getInstance();
+		this.capacity = capacity;
+		this.numberOfAnts = numberOfAnts;
+		this.stickLength = stickLength;
+		this.antSpeed = antSpeed;
+		this.x = new double[capacity * numberOfAnts];
+		this.v = new double[capacity * numberOfAnts];
+		this.originalV = new double[capacity * numberOfAnts];
+		this.hit = new double[capacity * (numberOfAnts + 1)];
+		this.positions = new double[numberOfAnts];
+		this.nSticks = 0;
+		if( RunMetrics.ENABLED ) {
+			this.xBefore = new double[capacity * numberOfAnts];
+			this.vBefore = new double[capacity * numberOfAnts];
+			this.fellOffAt = new double[capacity * numberOfAnts];
+			this.stepCounts = new long[capacity];
+			this.collisionCounts = new long[capacity];
+		} else {
+			this.xBefore = null;
+			this.vBefore = null;
+			this.fellOffAt = null;
+			this.stepCounts = null;
+			this.collisionCounts = null;
+		}
+	}
+
+	/**
+	 * Do <code>nSticks</code> runs, drawing all of them from one generator.
+	 *
+	 * @return row b is the <code>velocitiesEqual</code> of run b, as from
+	 * <code>ProceduralAnts.doRun</code>
+	 */
+	public static int[][] doRuns(int nSticks, int numberOfAnts, double stickLength,
+			double antSpeed, RandomGenerator r) {
+		BatchSimulation batch = new BatchSimulation(nSticks, numberOfAnts, stickLength, antSpeed);
+		for( int b=0; b<nSticks; b++ ) {
+			batch.addStick(r);
+		}
+		batch.run();
+		return batch.getOutcomes();
+	}
+
+	/**
+	 * Empty the batch; the buffers are kept.
+	 */
+	public void clear() {
+		nSticks = 0;
+	}
+
+	public int size() {
+		return nSticks;
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Place the ants of a new stick, drawing from <code>r</code> in the
+	 * same order as <code>ProceduralAnts.doRun</code>.
+	 *
+	 * @return the index of the new stick
+	 */
+	public int addStick(RandomGenerator r) {
+		if( nSticks == capacity ) {
+			throw new IllegalStateException("The batch is full");
+		}
+		int b = nSticks++;
+
+		// Same positions as ProceduralAnts.initializePositions
+		sampler.sample(r, positions, 0);
+
+		for( int i=0, j=b; i<numberOfAnts; i++, j+=capacity ) {
+			x[j] = positions[i];
+			if( r.nextBoolean() ) {
+				v[j] = -antSpeed;
+			} else {
+				v[j] = antSpeed;
+			}
+			originalV[j] = v[j];
+			if( RunMetrics.ENABLED ) {
+				// Not fallen off yet
+				fellOffAt[j] = Double.NaN;
+			}
+		}
+		if( RunMetrics.ENABLED ) {
+			stepCounts[b] = 0;
+			collisionCounts[b] = 0;
+		}
+		return b;
+	}
+
+	/**
+	 * Simulate every stick of the batch until all its ants have fallen off.
+	 */
+	public void run() {
+		long startTime = RunMetrics.ENABLED ? System.nanoTime() : 0L;
+		double timeStep = 0.5 * antSpeed;
+		double maxAntLifetime = stickLength / antSpeed ;
+		long nSteps = 0;
+
+		for( double simTime = 0.0; simTime < maxAntLifetime; simTime += timeStep ) {
+			if( nSteps++ % CHECK_INTERVAL == 0 && !anyOnStick() ) {
+				break;
+			}
+			if( RunMetrics.ENABLED ) {
+				System.arraycopy(x, 0, xBefore, 0, x.length);
+				System.arraycopy(v, 0, vBefore, 0, v.length);
+			}
+			kernel.stepBatch(timeStep, x, v, hit, numberOfAnts, nSticks, capacity, stickLength);
+			if( RunMetrics.ENABLED ) {
+				countStep(simTime + timeStep);
+			}
+		}
+		if( RunMetrics.ENABLED ) {
+			recordRuns(maxAntLifetime, System.nanoTime() - startTime);
+		}
+	}
+
+	/**
+	 * Count, stick by stick, what the step that ended at <code>simTime</code>
+	 * did, the way <code>ProceduralAnts.doSimulation</code> counts it: a
+	 * step for each stick that had ants on it, the ants that left the
+	 * stick, and the pairs that were marked as colliding.
+	 */
+	private void countStep(double simTime) {
+		for( int b=0; b<nSticks; b++ ) {
+			boolean live = false;
+			for( int i=0, j=b; i<numberOfAnts; i++, j+=capacity ) {
+				boolean wasOn = xBefore[j] >= 0.0 && xBefore[j] <= stickLength;
+				live |= wasOn;
+				if( wasOn && (x[j] < 0.0 || x[j] > stickLength) ) {
+					fellOffAt[j] = simTime;
+				}
+				if( i > 0 && Math.abs(x[j] - x[j-capacity]) < Ant.epsX
+						&& vBefore[j] != vBefore[j-capacity]
+						&& x[j-capacity] >= 0.0 && x[j] <= stickLength ) {
+					collisionCounts[b]++;
+				}
+			}
+			if( live ) {
+				stepCounts[b]++;
+			}
+		}
+	}
+
+	/**
+	 * Hand each stick to <code>RunMetrics</code> as a run of its own,
+	 * sharing the wall-clock time of the batch evenly. An ant that was
+	 * still on the stick when the steps ran out, at
+	 * <code>maxAntLifetime</code>, is logged then, as the stepped
+	 * simulations log it.
+	 */
+	private void recordRuns(double maxAntLifetime, long nanos) {
+		RunMetrics metrics = RunMetrics.current();
+		for( int b=0; b<nSticks; b++ ) {
+			for( int i=0, j=b; i<numberOfAnts; i++, j+=capacity ) {
+				double t = fellOffAt[j];
+				metrics.antFellOff(Double.isNaN(t) ? maxAntLifetime : t);
+			}
+			metrics.simulationDone(stepCounts[b], collisionCounts[b]);
+			metrics.runDone(nanos / nSticks);
+		}
+	}
+
+	/**
+	 * Does any stick still have an ant on it?
+	 */
+	private boolean anyOnStick() {
+		for( int i=0; i<numberOfAnts; i++ ) {
+			for( int j=i*capacity; j<i*capacity+nSticks; j++ ) {
+				if( x[j] >= 0.0 && x[j] <= stickLength ) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 1 if ant i of stick b fell off the end it faced initially, otherwise 0
+	 */
+	public int getOutcome(int b, int i) {
+		int j = i * capacity + b;
+		return (originalV[j] == v[j]) ? 1 : 0;
+	}
+
+	/**
+	 * The outcomes of all sticks, one row per stick
+	 */
+	public int[][] getOutcomes() {
+		int[][] retval = new int[nSticks][numberOfAnts];
+		for( int b=0; b<nSticks; b++ ) {
+			for( int i=0; i<numberOfAnts; i++ ) {
+				retval[b][i] = getOutcome(b, i);
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * Add the outcomes of all sticks to per-ant "same side" counts.
+	 */
+	public void addSameSideCounts(long[] counts) {
+		for( int i=0; i<numberOfAnts; i++ ) {
+			long count = 0;
+			for( int j=i*capacity; j<i*capacity+nSticks; j++ ) {
+				count += (originalV[j] == v[j]) ? 1 : 0;
+			}
+			counts[i] += count;
+		}
+	}
+}
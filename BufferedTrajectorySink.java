@@ -0,0 +1,130 @@
+package org.avk.ants;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Common part of the sinks that write characters to a channel.
+ *
+ * <code>System.out.format</code> parses its format string on every call
+ * and goes through a synchronized stream. Instead, subclasses append
+ * ASCII text and numbers, formatted by hand, to a large buffer, which is
+ * written to the channel only when it is full or flushed.
+ */
+public abstract class BufferedTrajectorySink implements TrajectorySink {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	// Room for the longest single item appended between checks
+	private static final int MAX_ITEM = 64;
+	private static final double[] POWERS_OF_TEN = { 1.0, 10.0, 100.0, 1000.0 };
+
+	private final WritableByteChannel out;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private final byte[] digits = new byte[MAX_ITEM];
+
+	protected BufferedTrajectorySink(WritableByteChannel out) {
+		this.out = out;
+	}
+
+	public void flush() {
+		buffer.flip();
+		try {
+			while( buffer.hasRemaining() ) {
+				out.write(buffer);
+			}
+		} catch( IOException e ) {
+			throw new UncheckedIOException(e);
+		} finally {
+			buffer.clear();
+		}
+	}
+
+	private void reserve(int n) {
+		if( buffer.remaining() < n ) {
+			flush();
+		}
+	}
+
+	/**
+	 * Append text that is known to be plain ASCII
+	 */
+	protected void appendAscii(String s) {
+		for( int i=0; i<s.length(); i++ ) {
+			if( !buffer.hasRemaining() ) {
+				flush();
+			}
+			buffer.put((byte)s.charAt(i));
+		}
+	}
+
+	protected void appendChar(char c) {
+		reserve(1);
+		buffer.put((byte)c);
+	}
+
+	/**
+	 * Same as <code>String.format("%<i>width</i>d", value)</code>
+	 */
+	protected void appendInt(long value, int width) {
+		if( value == Long.MIN_VALUE ) {
+			appendAscii(String.format("%" + width + "d", value));
+			return;
+		}
+		int start = digits.length;
+		long magnitude = Math.abs(value);
+		do {
+			digits[--start] = (byte)('0' + magnitude % 10);
+			magnitude /= 10;
+		} while( magnitude > 0 );
+		if( value < 0 ) {
+			digits[--start] = '-';
+		}
+		appendDigits(start, width);
+	}
+
+	/**
+	 * Same as <code>String.format("%<i>width</i>.<i>decimals</i>f", value)</code>
+	 * for up to 3 decimals. A width of 0 means no padding.
+	 * Values that sit right at a rounding boundary, and values too large
+	 * to scale exactly, are handed to <code>String.format</code> so that
+	 * the result is always the same.
+	 */
+	protected void appendFixed(double value, int width, int decimals) {
+		double scaled = Math.abs(value) * POWERS_OF_TEN[decimals];
+		double fraction = scaled - Math.floor(scaled);
+		if( !(scaled < 1.0e15) || Math.abs(fraction - 0.5) < 1.0e-6 ) {
+			String format = (width > 0 ? "%" + width : "%") + "." + decimals + "f";
+			appendAscii(String.format(format, value));
+			return;
+		}
+		long rounded = (long)Math.floor(scaled + 0.5);
+		int start = digits.length;
+		for( int d=0; d<decimals; d++ ) {
+			digits[--start] = (byte)('0' + rounded % 10);
+			rounded /= 10;
+		}
+		if( decimals > 0 ) {
+			digits[--start] = '.';
+		}
+		do {
+			digits[--start] = (byte)('0' + rounded % 10);
+			rounded /= 10;
+		} while( rounded > 0 );
+		// Like String.format, keep the sign of negative values that round to zero
+		if( Double.compare(value, 0.0) < 0 ) {
+			digits[--start] = '-';
+		}
+		appendDigits(start, width);
+	}
+
+	private void appendDigits(int start, int width) {
+		int length = digits.length - start;
+		reserve(Math.max(width, length));
+		for( int pad=length; pad<width; pad++ ) {
+			buffer.put((byte)' ');
+		}
+		buffer.put(digits, start, length);
+	}
+}
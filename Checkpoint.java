@@ -0,0 +1,171 @@
+package org.avk.ants;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * The state of a <code>ProceduralAnts</code> campaign, saved so that the
+ * campaign can continue after the JVM dies.
+ *
+ * The file holds:
+ * <pre>
+ *  long   magic "ANTCKPT3"
+ *  int    numberOfAnts
+ *  double stickLength, antSpeed
+ *  long   seed, nRuns
+ *  int    engine ordinal
+ *  int    group            the group of runs in progress
+ *  long   completedRuns    runs done in that group
+ *  long   counts[numberOfAnts]          "same side" counts of the group
+ *  double probabilities[numberOfAnts]   summed over the finished groups
+ *  long   CRC32 of everything before it
+ * </pre>
+ * Run k draws from its own stream, <code>AntRandom.forRun(seed, k)</code>,
+ * so the number of runs done is all it takes to continue; no generator
+ * state is saved. The magic changes whenever the runs of a seed change
+ * (ANTCKPT3: positions from <code>PositionSampler</code>), so counts from
+ * an older version are refused rather than mixed with new ones.
+ *
+ * A campaign that runs until its intervals are narrow enough
+ * (<code>ProceduralAnts.runUntilConverged</code>) is a single set: group
+ * 0, with the counts of all the runs done.
+ *
+ * A checkpoint is written to a temporary file next to the real one,
+ * forced to disk and then renamed over it, so the file on disk is always
+ * a complete checkpoint, either the old one or the new one.
+ */
+public class Checkpoint {
+
+	static final long MAGIC = 0x414E54434B505433L;		// "ANTCKPT3"
+
+	final int numberOfAnts;
+	final double stickLength;
+	final double antSpeed;
+	final long seed;
+	final long nRuns;
+	final ProceduralAnts.Engine engine;
+	int group;
+	long completedRuns;
+	final long[] counts;
+	final double[] probabilities;
+
+	public Checkpoint(int numberOfAnts, double stickLength, double antSpeed, long seed,
+			long nRuns, ProceduralAnts.Engine engine) {
+		this.numberOfAnts = numberOfAnts;
+		this.stickLength = stickLength;
+		this.antSpeed = antSpeed;
+		this.seed = seed;
+		this.nRuns = nRuns;
+		this.engine = engine;
+		this.counts = new long[numberOfAnts];
+		this.probabilities = new double[numberOfAnts];
+	}
+
+	/**
+	 * Does this checkpoint belong to the given campaign?
+	 */
+	public boolean matches(int numberOfAnts, double stickLength, double antSpeed, long seed,
+			long nRuns, ProceduralAnts.Engine engine) {
+		return this.numberOfAnts == numberOfAnts && this.stickLength == stickLength
+				&& this.antSpeed == antSpeed && this.seed == seed
+				&& this.nRuns == nRuns && this.engine == engine;
+	}
+
+	private int size() {
+		return 8 + 4 + 8 + 8 + 8 + 8 + 4 + 4 + 8 + numberOfAnts * 16 + 8;
+	}
+
+	/**
+	 * Replace the checkpoint at <code>path</code> with this one.
+	 */
+	public void save(Path path) {
+		ByteBuffer b = ByteBuffer.allocate(size());
+		b.putLong(MAGIC);
+		b.putInt(numberOfAnts);
+		b.putDouble(stickLength);
+		b.putDouble(antSpeed);
+		b.putLong(seed);
+		b.putLong(nRuns);
+		b.putInt(engine.ordinal());
+		b.putInt(group);
+		b.putLong(completedRuns);
+		for( long c: counts ) {
+			b.putLong(c);
+		}
+		for( double p: probabilities ) {
+			b.putDouble(p);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(b.array(), 0, b.position());
+		b.putLong(crc.getValue());
+		b.flip();
+
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		try {
+			try( FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING) ) {
+				while( b.hasRemaining() ) {
+					channel.write(b);
+				}
+				channel.force(true);
+			}
+			Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch( IOException e ) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Read a checkpoint.
+	 *
+	 * @return null if there is no file at <code>path</code>
+	 * @throws IllegalStateException if the file is not a valid checkpoint
+	 */
+	public static Checkpoint load(Path path) {
+		if( !Files.exists(path) ) {
+			return null;
+		}
+		ByteBuffer b;
+		try {
+			b = ByteBuffer.wrap(Files.readAllBytes(path));
+		} catch( IOException e ) {
+			throw new UncheckedIOException(e);
+		}
+		if( b.remaining() < 12 || b.getLong() != MAGIC ) {
+			throw new IllegalStateException(path + " is not a checkpoint");
+		}
+		int numberOfAnts = b.getInt();
+		Checkpoint c;
+		try {
+			c = new Checkpoint(numberOfAnts, b.getDouble(), b.getDouble(), b.getLong(),
+					b.getLong(), ProceduralAnts.Engine.values()[b.getInt()]);
+			c.group = b.getInt();
+			c.completedRuns = b.getLong();
+			for( int i=0; i<numberOfAnts; i++ ) {
+				c.counts[i] = b.getLong();
+			}
+			for( int i=0; i<numberOfAnts; i++ ) {
+				c.probabilities[i] = b.getDouble();
+			}
+			CRC32 crc = new CRC32();
+			crc.update(b.array(), 0, b.position());
+			if( b.getLong() != crc.getValue() ) {
+				throw new IllegalStateException(path + " is corrupt");
+			}
+		} catch( RuntimeException e ) {
+			if( e instanceof IllegalStateException ) {
+				throw e;
+			}
+			throw new IllegalStateException(path + " is truncated or corrupt", e);
+		}
+		return c;
+	}
+}
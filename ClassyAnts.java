@@ -1,13 +1,6 @@
 package org.avk.ants;
 
 import java.lang.Math;
-import java.util.ListIterator;
-import java.util.Random;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
-import org.avk.ants.Ant;
 
 public class ClassyAnts {
 
@@ -30,10 +23,10 @@ public class ClassyAnts {
 		int iMin = 0;
 		int iMax = numberOfAnts - 1;
 		
-		List<Ant> theAnts = new ArrayList<Ant>();
+		AntPopulation theAnts = new AntPopulation(numberOfAnts);
 		
 		// Initialize positions and velocities
-		Random r = new Random(31103);
+		AntRandom r = new AntRandom(31103);
 		for( int i=iMin; i<=iMax; i++) {
 			// We force the Ants to be positioned on whole numbers
 			double position = Math.rint(r.nextDouble() * stickLength);
@@ -41,46 +34,47 @@ public class ClassyAnts {
 			if( r.nextBoolean() ) {
 				velocity = -antSpeed;
 			}
-			theAnts.add(new Ant(i, position, velocity));
+			theAnts.add(i, position, velocity);
 		}
-		Collections.sort(theAnts);
+		theAnts.sortByPosition();
+		// Walks over the live Ants skip the ones that are gone,
+		// so the tail of a run costs no more than the Ants left
+		LiveSet live = theAnts.getLiveSet();
 
 		// Let's see what we've got
 		System.out.format("Created %d ants with velocity +/- %.1f cm./sec. on a %3.0f cm. stick\n",
 				numberOfAnts, antSpeed, stickLength);
 		System.out.format("\n  #   position   velocity\n");
-		for (Ant a : theAnts) {
-			System.out.format(" %s\n", a);
+		for( int ia=0; ia<theAnts.size(); ia++ ) {
+			System.out.format(" %s\n", theAnts.toString(ia));
 		}
 
 		// Start the simulation
 		double timeStep = 0.5 ;
-		System.out.format("\n    Time    Ant positions");
+		TrajectorySink sink = TrajectorySink.create(TrajectorySink.kindFromProperties(),
+				numberOfAnts, stickLength, TextTrajectorySink.Style.MARKERS, 4, false);
 		for( double simTime = 0.0; simTime < runLength; simTime += timeStep ) {
 			
 			// Print the current positions of the Ants
-			System.out.format("\n %6.1f:  ", simTime);
-			for (ListIterator<Ant> antIter = theAnts.listIterator(); antIter.hasNext();) {
-				int ia = antIter.nextIndex();	// The index of the next Ant,
-				Ant a = antIter.next();			// and the next Ant itself.
-				if( !a.isAlive() ) {
-					// Ants that dropped off the stick
-					System.out.format(" ----   ");
-				} else {
-					// Active Ants
-					System.out.format("%4.1f", a.getX());
-					if( antIter.hasNext() ) {
-						// Peek at the following Ant
-						Ant b = antIter.next();
-						antIter.previous();
-						if( a.isTouching(b) ) {
-							// These two Ants collided
-							System.out.print(" <> ");
-						} else {
-							System.out.print("    ");
-						}
-					}
+			sink.beginStep(simTime);
+			int iNext = 0;
+			for( int k=0, n=live.entryCount(); k<n; k++ ) {
+				int ia = live.entry(k);
+				if( !live.contains(ia) ) {
+					continue;
 				}
+				// Ants that dropped off the stick, all at once
+				sink.fallen(iNext, ia);
+				// Active Ants; peek at the following Ant to see if they collided
+				sink.ant(ia, theAnts.getX(ia),
+						ia+1 < theAnts.size() && theAnts.isTouching(ia, ia+1));
+				iNext = ia + 1;
+			}
+			sink.fallen(iNext, theAnts.size());
+			sink.endStep(iMin, iMax);
+			if( dbgFlag ) {
+				// Keep the debug output below in step with the table
+				sink.flush();
 			}
 			
 			// Stop the simulation once all of the Ants are gone
@@ -89,57 +83,45 @@ public class ClassyAnts {
 			}
 			
 			// Update the Ant positions
-			for (ListIterator<Ant> antIter = theAnts.listIterator(); antIter.hasNext();) {
-				
-				// Get the Ant we want to update, as well as its index
-				int ia = antIter.nextIndex();	// The index,
-				Ant a = antIter.next();			// and the Ant itself.
+			for( int k=0, n=live.entryCount(); k<n; k++ ) {
+				int ia = live.entry(k);
 				
 				// Don't bother with Ants that are gone
-				if( ia < iMin || ia > iMax || !a.isAlive() ) {
+				if( !live.contains(ia) ) {
 					continue;
 				}
 				
 				// Update this Ant's position
-				a.simpleMove(timeStep);
+				theAnts.simpleMove(ia, timeStep);
 				if( dbgFlag ) {
-					System.out.format("\n dbg Updated Ant %d to %4.1f", ia, a.getX());
-				}
-				
-				// Did this Ant just fall off the left or right end of the stick?
-				if( a.getX() < 0.0 ) {
-					a.disable();
-					iMin++;
-					if( dbgFlag ) {
-						System.out.format(" dbg iMin is now %d\n", iMin);
-					}
-					continue;
-				}
-				if( a.getX() > stickLength ) {
-					a.disable();
-					iMax--;
-					if( dbgFlag ) {
-						System.out.format(" dbg iMax is now %d\n", iMax);
-					}
-					continue;
+					System.out.format("\n dbg Updated Ant %d to %4.1f", ia, theAnts.getX(ia));
 				}
 						
 				// If it exists, access the previous Ant
-				// and see if our move has caused a collision
-				if( antIter.hasPrevious() && antIter.previousIndex() > 0) {
-					int iPrevious = antIter.previousIndex()-1;
-					Ant previousAnt = theAnts.get(iPrevious);
-					if( a.isTouching(previousAnt) ) {
-						// A collision did occur.
-						// Reverse the directions of both Ants.
-						a.reflect();
-						previousAnt.reflect();
-						if( dbgFlag ) {
-							System.out.format("\n dbg reflected %d and %d\n", ia, iPrevious);
-						}
-					}
+				// and see if our move has caused a collision;
+				// this also keeps the Ants in order of position
+				if( theAnts.keepOrder(ia) > 0 && dbgFlag ) {
+					System.out.format("\n dbg reflected %d and %d\n", ia, ia-1);
+				}
+			}
+			
+			// Did Ants just fall off the left or right end of the stick?
+			// The Ants are in order, so those are the first and the last ones.
+			while( iMin <= iMax && theAnts.getX(iMin) < 0.0 ) {
+				theAnts.disable(iMin);
+				iMin++;
+				if( dbgFlag ) {
+					System.out.format(" dbg iMin is now %d\n", iMin);
+				}
+			}
+			while( iMin <= iMax && theAnts.getX(iMax) > stickLength ) {
+				theAnts.disable(iMax);
+				iMax--;
+				if( dbgFlag ) {
+					System.out.format(" dbg iMax is now %d\n", iMax);
 				}
 			}
 		}
+		sink.close();
 	}
 }
@@ -0,0 +1,192 @@
+package org.avk.ants;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The upcoming collisions of a row of Ants, in order of time.
+ *
+ * Ants never pass each other, so only neighbors in sorted order can
+ * collide. The scheduler keeps, for each pair <code>(i, i+1)</code>, the
+ * time of its next collision, and an indexed heap of the pairs ordered
+ * by that time. Iterating yields the earliest collision and carries it
+ * out: both ants are brought up to that time and reflected. Only three
+ * pairs can change as a result, the one that collided and its two
+ * neighbors, so each event costs O(log n) and nothing is ever rescanned.
+ *
+ * Ants are advanced lazily; <code>advanceTo</code> brings all of them up
+ * to a given time, e.g. to draw them. The scheduler knows nothing about
+ * the ends of the stick: an ant that falls off should be passed to
+ * <code>disable</code>, after which it takes part in no more collisions.
+ * <code>EventSimulation</code> runs its collisions this way.
+ */
+public class CollisionScheduler implements Iterator<CollisionScheduler.Collision> {
+
+	/**
+	 * Ants <code>left</code> and <code>left+1</code> meet at <code>time</code>.
+	 */
+	public static class Collision {
+		public final double time;
+		public final int left;
+		public final int right;
+
+		Collision(double time, int left, int right) {
+			this.time = time;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%.3f: %d-%d", time, left, right);
+		}
+	}
+
+	private final Ant[] ants;
+	// lastUpdate[i] is the time at which ants[i].getX() was computed
+	private final double[] lastUpdate;
+	// Pair i collides next at pairs.getTime(i), or never if that is infinity
+	private final IndexedMinHeap pairs;
+	private final int nPairs;
+	private double simTime;
+
+	/**
+	 * @param ants sorted by position, all at time 0; they are updated in place
+	 */
+	public CollisionScheduler(Ant[] ants) {
+		this.ants = ants;
+		this.lastUpdate = new double[ants.length];
+		this.nPairs = Math.max(ants.length - 1, 0);
+		this.pairs = new IndexedMinHeap(nPairs);
+		this.simTime = 0.0;
+		double[] pairTime = new double[nPairs];
+		for( int i=0; i<nPairs; i++ ) {
+			pairTime[i] = collisionTime(i);
+		}
+		pairs.setAll(pairTime);
+	}
+
+	/**
+	 * Is there another collision to come?
+	 */
+	public boolean hasNext() {
+		return pairs.peekTime() < Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * The time of the next collision, or infinity if there is none
+	 */
+	public double peekTime() {
+		return pairs.peekTime();
+	}
+
+	/**
+	 * Carry out the next collision and return it.
+	 */
+	public Collision next() {
+		if( !hasNext() ) {
+			throw new NoSuchElementException();
+		}
+		int left = pairs.peek();
+		int right = left + 1;
+		simTime = pairs.getTime(left);
+		advance(left);
+		advance(right);
+		ants[left].reflect();
+		ants[right].reflect();
+		update(left);
+		if( left > 0 ) {
+			update(left - 1);
+		}
+		if( right < nPairs ) {
+			update(right);
+		}
+		return new Collision(simTime, left, right);
+	}
+
+	/**
+	 * Bring every live ant up to time <code>t</code>, which must not be
+	 * later than <code>peekTime()</code>.
+	 */
+	public void advanceTo(double t) {
+		simTime = t;
+		for( int i=0; i<ants.length; i++ ) {
+			if( ants[i].isAlive() ) {
+				advance(i);
+			}
+		}
+	}
+
+	/**
+	 * Ant i has left; it will not collide any more.
+	 */
+	public void disable(int i) {
+		ants[i].disable();
+		if( i > 0 ) {
+			update(i - 1);
+		}
+		if( i < nPairs ) {
+			update(i);
+		}
+	}
+
+	/**
+	 * Ant i has left at time <code>t</code>, which must not be earlier
+	 * than <code>getTime()</code> nor later than <code>peekTime()</code>.
+	 * It is brought up to that time and will not collide any more.
+	 */
+	public void disable(int i, double t) {
+		simTime = t;
+		advance(i);
+		disable(i);
+	}
+
+	/**
+	 * Time of the last collision returned, or of the last <code>advanceTo</code>
+	 */
+	public double getTime() {
+		return simTime;
+	}
+
+	/**
+	 * Ant i, as of its last update
+	 */
+	public Ant getAnt(int i) {
+		return ants[i];
+	}
+
+	/**
+	 * Position of ant i at time t
+	 */
+	public double positionAt(int i, double t) {
+		return ants[i].getX() + (t - lastUpdate[i]) * ants[i].getV();
+	}
+
+	/**
+	 * Absolute time of the next collision of pair i, from the positions
+	 * the two ants will have at the current time.
+	 */
+	private double collisionTime(int i) {
+		Ant a = ants[i];
+		Ant b = ants[i+1];
+		if( !a.isAlive() || !b.isAlive() ) {
+			return Double.POSITIVE_INFINITY;
+		}
+		double deltaV = b.getV() - a.getV();
+		if( deltaV > -Ant.epsV ) {
+			// Moving apart, or in the same direction
+			return Double.POSITIVE_INFINITY;
+		}
+		double deltaX = positionAt(i+1, simTime) - positionAt(i, simTime);
+		return simTime - deltaX/deltaV;
+	}
+
+	private void update(int i) {
+		pairs.setTime(i, collisionTime(i));
+	}
+
+	private void advance(int i) {
+		ants[i].simpleMove(simTime - lastUpdate[i]);
+		lastUpdate[i] = simTime;
+	}
+}
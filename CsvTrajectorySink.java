@@ -0,0 +1,43 @@
+package org.avk.ants;
+
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The trajectory as comma-separated values, one row per ant per time step:
+ * <pre>
+ * time,ant,position,alive,touching_next
+ * </pre>
+ * The position of an ant that has fallen off is left empty.
+ */
+public class CsvTrajectorySink extends BufferedTrajectorySink {
+
+	private double simTime;
+
+	public CsvTrajectorySink(WritableByteChannel out) {
+		super(out);
+		appendAscii("time,ant,position,alive,touching_next\n");
+	}
+
+	public void beginStep(double simTime) {
+		this.simTime = simTime;
+	}
+
+	public void ant(int i, double position, boolean touchingNext) {
+		appendFixed(simTime, 0, 3);
+		appendChar(',');
+		appendInt(i, 0);
+		appendChar(',');
+		appendFixed(position, 0, 3);
+		appendAscii(touchingNext ? ",1,1\n" : ",1,0\n");
+	}
+
+	public void fallen(int i) {
+		appendFixed(simTime, 0, 3);
+		appendChar(',');
+		appendInt(i, 0);
+		appendAscii(",,0,0\n");
+	}
+
+	public void endStep(int iMin, int iMax) {
+	}
+}
@@ -0,0 +1,377 @@
+package org.avk.ants;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Spreads the runs of a <code>ProceduralAnts</code> campaign over
+ * <code>RunWorker</code> processes, on this host or on others, and adds
+ * up the per-ant counts they send back.
+ *
+ * The runs are cut into chunks of <code>chunkSize</code> consecutive runs.
+ * Run k always draws from <code>AntRandom.forRun(seed, k)</code>, so a
+ * chunk gives the same counts whichever worker does it, and the totals
+ * are identical to <code>ProceduralAnts</code> with the same seed.
+ *
+ * Each worker connects over TCP and is handed one chunk at a time:
+ * <pre>
+ *  worker:      int MAGIC
+ *  coordinator: int numberOfAnts, double stickLength, double antSpeed,
+ *               long seed, int engine ordinal
+ *  then, until the campaign is done:
+ *  coordinator: byte RANGE, long from, long to
+ *  worker:      byte DONE, long from, long to, long counts[numberOfAnts]
+ *  and finally
+ *  coordinator: byte QUIT
+ * </pre>
+ * Once every chunk has been handed out, an idle worker gets a second copy
+ * of the chunk that has been running longest; whichever copy finishes
+ * first counts, so one slow worker cannot hold up the campaign: the link
+ * to a worker still doing a chunk that is already done is closed, and the
+ * results are in as soon as the last chunk is. When a worker disconnects, a chunk it was doing goes back to the front of the
+ * queue, unless another copy of it is still running.
+ *
+ * The coordinator listens on the loopback interface, and starts its
+ * own local workers. With <code>-Dants.coordinator.port</code> it listens
+ * on that port on every interface instead, and workers on other hosts
+ * can join at any time with <code>RunWorker host port</code>. There is
+ * no authentication, so only do that on a trusted network.
+ */
+public class DistributedRunner {
+
+	static final int MAGIC = 0x414E5457;		// "ANTW"
+	static final byte RANGE = 'R';
+	static final byte DONE = 'D';
+	static final byte QUIT = 'Q';
+
+	// Chunks per worker, so that faster workers can take on more of them
+	static final int CHUNKS_PER_WORKER = 16;
+
+	private final int numberOfAnts;
+	private final double stickLength;
+	private final double antSpeed;
+	private final long seed;
+	private final long nRuns;
+	private final ProceduralAnts.Engine engine;
+	private final long chunkSize;
+	private final int nChunks;
+
+	// All of the following are guarded by this
+	private final Deque<Integer> queue = new ArrayDeque<Integer>();
+	private final boolean[] done;
+	// holders[c]: workers doing chunk c right now
+	private final int[] holders;
+	// startTimes[c]: when the first copy of chunk c that is still running was handed out
+	private final long[] startTimes;
+	private final long[] counts;
+	// The chunk each link is waiting for
+	private final Map<Socket, Integer> working = new HashMap<Socket, Integer>();
+	private int nDone;
+	private int nWorkers;
+	private int nBackups;
+	private int nReassigned;
+
+	/**
+	 * @param numberOfAnts
+	 * @param stickLength
+	 * @param antSpeed
+	 * @param seed identifies the campaign
+	 * @param nRuns
+	 * @param engine
+	 * @param chunkSize runs per chunk
+	 */
+	public DistributedRunner(int numberOfAnts, double stickLength, double antSpeed, long seed,
+			long nRuns, ProceduralAnts.Engine engine, long chunkSize) {
+		if( (nRuns + chunkSize - 1) / chunkSize > Integer.MAX_VALUE ) {
+			throw new IllegalArgumentException("Too many chunks; make them larger");
+		}
+		this.numberOfAnts = numberOfAnts;
+		this.stickLength = stickLength;
+		this.antSpeed = antSpeed;
+		this.seed = seed;
+		this.nRuns = nRuns;
+		this.engine = engine;
+		this.chunkSize = chunkSize;
+		this.nChunks = (int)((nRuns + chunkSize - 1) / chunkSize);
+		this.done = new boolean[nChunks];
+		this.holders = new int[nChunks];
+		this.startTimes = new long[nChunks];
+		this.counts = new long[numberOfAnts];
+		for( int c=0; c<nChunks; c++ ) {
+			queue.add(c);
+		}
+	}
+
+	/**
+	 * Accept workers on <code>serverSocket</code> and serve each of them
+	 * on a thread of its own, until the socket is closed.
+	 */
+	public void acceptWorkers(ServerSocket serverSocket) {
+		Thread acceptor = new Thread(() -> {
+			while( !serverSocket.isClosed() ) {
+				try {
+					Socket socket = serverSocket.accept();
+					Thread link = new Thread(() -> serve(socket), "worker " + socket.getRemoteSocketAddress());
+					link.setDaemon(true);
+					link.start();
+				} catch( IOException e ) {
+					// Closed, or a connection that failed; keep accepting if open
+				}
+			}
+		}, "acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * Wait until every chunk is done.
+	 *
+	 * @param localWorkers the worker processes started by this JVM
+	 * @return per-ant count of "same side" outcomes
+	 * @throws IllegalStateException if all local workers have exited and no worker is connected
+	 */
+	public synchronized long[] awaitCounts(List<Process> localWorkers) throws InterruptedException {
+		while( nDone < nChunks ) {
+			if( nWorkers == 0 && !localWorkers.isEmpty()
+					&& localWorkers.stream().noneMatch(Process::isAlive) ) {
+				throw new IllegalStateException(String.format(
+						"All workers have exited with %d of %d chunks done", nDone, nChunks));
+			}
+			wait(1000);
+		}
+		return counts.clone();
+	}
+
+	private void serve(Socket socket) {
+		int chunk = -1;
+		boolean joined = false;
+		try( Socket s = socket;
+				DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream())) ) {
+			s.setTcpNoDelay(true);
+			if( in.readInt() != MAGIC ) {
+				return;
+			}
+			out.writeInt(numberOfAnts);
+			out.writeDouble(stickLength);
+			out.writeDouble(antSpeed);
+			out.writeLong(seed);
+			out.writeInt(engine.ordinal());
+			joined = true;
+			workerJoined();
+			while( (chunk = next(s)) >= 0 ) {
+				long from = chunk * chunkSize;
+				long to = Math.min(from + chunkSize, nRuns);
+				out.writeByte(RANGE);
+				out.writeLong(from);
+				out.writeLong(to);
+				out.flush();
+				if( in.readByte() != DONE || in.readLong() != from || in.readLong() != to ) {
+					throw new IOException("Unexpected reply from " + s.getRemoteSocketAddress());
+				}
+				long[] chunkCounts = new long[numberOfAnts];
+				for( int i=0; i<numberOfAnts; i++ ) {
+					chunkCounts[i] = in.readLong();
+				}
+				completed(s, chunk, chunkCounts);
+				chunk = -1;
+			}
+			out.writeByte(QUIT);
+			out.flush();
+		} catch( IOException | InterruptedException e ) {
+			// The worker is gone, or its chunk was done elsewhere;
+			// someone else will do the chunk if it is not done
+			if( chunk >= 0 ) {
+				failed(socket, chunk);
+			}
+		} finally {
+			if( joined ) {
+				workerLeft();
+			}
+		}
+	}
+
+	/**
+	 * The next chunk for a worker that has none, waiting if every chunk
+	 * left already has two copies running.
+	 *
+	 * @return -1 once all chunks are done
+	 */
+	private synchronized int next(Socket link) throws InterruptedException {
+		while( nDone < nChunks ) {
+			Integer queued = queue.pollFirst();
+			if( queued != null ) {
+				int chunk = queued;
+				if( !done[chunk] ) {
+					if( holders[chunk]++ == 0 ) {
+						startTimes[chunk] = System.nanoTime();
+					}
+					working.put(link, chunk);
+					return chunk;
+				}
+				continue;
+			}
+			// Nothing left to hand out: back up the chunk that has been running longest
+			int oldest = -1;
+			for( int c=0; c<nChunks; c++ ) {
+				if( !done[c] && holders[c] == 1 && (oldest < 0 || startTimes[c] < startTimes[oldest]) ) {
+					oldest = c;
+				}
+			}
+			if( oldest >= 0 ) {
+				holders[oldest]++;
+				nBackups++;
+				working.put(link, oldest);
+				return oldest;
+			}
+			wait();
+		}
+		return -1;
+	}
+
+	private synchronized void completed(Socket link, int chunk, long[] chunkCounts) {
+		working.remove(link);
+		holders[chunk]--;
+		if( !done[chunk] ) {
+			done[chunk] = true;
+			for( int i=0; i<numberOfAnts; i++ ) {
+				counts[i] += chunkCounts[i];
+			}
+			nDone++;
+			notifyAll();
+			// Drop the links still doing a copy of it, rather than wait for their reply
+			for( Map.Entry<Socket, Integer> entry: working.entrySet() ) {
+				if( entry.getValue() == chunk ) {
+					try {
+						entry.getKey().close();
+					} catch( IOException e ) {
+						// Closed anyway
+					}
+				}
+			}
+		}
+	}
+
+	private synchronized void failed(Socket link, int chunk) {
+		working.remove(link);
+		holders[chunk]--;
+		if( !done[chunk] && holders[chunk] == 0 ) {
+			queue.addFirst(chunk);
+			nReassigned++;
+			notifyAll();
+		}
+	}
+
+	private synchronized void workerJoined() {
+		nWorkers++;
+	}
+
+	private synchronized void workerLeft() {
+		nWorkers--;
+		notifyAll();
+	}
+
+	public synchronized int getBackupCount() {
+		return nBackups;
+	}
+
+	public synchronized int getReassignedCount() {
+		return nReassigned;
+	}
+
+	/**
+	 * Start a <code>RunWorker</code> in a new JVM with this JVM's class path,
+	 * system properties and modules.
+	 */
+	static Process startLocalWorker(int port, int nThreads) throws IOException {
+		List<String> command = new ArrayList<String>();
+		command.add(ProcessHandle.current().info().command().orElse("java"));
+		for( String arg: ManagementFactory.getRuntimeMXBean().getInputArguments() ) {
+			if( arg.startsWith("-D") || arg.startsWith("-Xmx") || arg.startsWith("--add-modules") ) {
+				command.add(arg);
+			}
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(RunWorker.class.getName());
+		command.add(InetAddress.getLoopbackAddress().getHostAddress());
+		command.add(Integer.toString(port));
+		command.add(Integer.toString(nThreads));
+		return new ProcessBuilder(command).inheritIO().start();
+	}
+
+	/**
+	 * @param args numberOfAnts stickLength antSpeed seed nRuns engine [# local workers]
+	 */
+	public static void main(String[] args) throws Exception {
+		if( args.length < 6 ) {
+			System.out.println("Usage: DistributedRunner numberOfAnts stickLength antSpeed seed nRuns engine [# local workers]");
+			System.out.println("       -Dants.coordinator.port=p also accepts workers from other hosts");
+			return;
+		}
+		int numberOfAnts = Integer.parseInt(args[0]);
+		double stickLength = Double.parseDouble(args[1]);
+		double antSpeed = Double.parseDouble(args[2]);
+		long seed = Long.parseLong(args[3]);
+		long nRuns = Long.parseLong(args[4]);
+		ProceduralAnts.Engine engine = ProceduralAnts.Engine.valueOf(args[5].toUpperCase().replace('-', '_'));
+		int nProcessors = Runtime.getRuntime().availableProcessors();
+		int nLocal = args.length >= 7 ? Integer.parseInt(args[6]) : nProcessors;
+
+		Integer port = Integer.getInteger("ants.coordinator.port");
+		ServerSocket serverSocket = port == null
+				? new ServerSocket(0, 50, InetAddress.getLoopbackAddress())
+				: new ServerSocket(port);
+		long chunkSize = Math.max(ParallelRunner.GRAIN,
+				nRuns / (CHUNKS_PER_WORKER * (long)Math.max(nLocal, 1)));
+		DistributedRunner coordinator = new DistributedRunner(numberOfAnts, stickLength, antSpeed,
+				seed, nRuns, engine, chunkSize);
+		coordinator.acceptWorkers(serverSocket);
+		if( port != null ) {
+			System.err.format("Waiting for workers on port %d\n", serverSocket.getLocalPort());
+		}
+
+		long startTime = System.nanoTime();
+		List<Process> localWorkers = new ArrayList<Process>();
+		for( int w=0; w<nLocal; w++ ) {
+			localWorkers.add(startLocalWorker(serverSocket.getLocalPort(),
+					Math.max(1, nProcessors / nLocal)));
+		}
+		long[] counts;
+		try {
+			counts = coordinator.awaitCounts(localWorkers);
+		} finally {
+			serverSocket.close();
+		}
+		double elapsed = (System.nanoTime() - startTime) * 1e-9;
+
+		System.out.format("\nFinished %d runs with %d ants\n", nRuns, numberOfAnts);
+		System.out.format("Printing the probability that an ant falls off the same end of the stick\nthat it faced initially\n");
+		System.out.format("ant  probability\n");
+		for( int i=0; i<numberOfAnts; i++ ) {
+			System.out.format(" %2d  %5.3f\n", i, counts[i] / (double)nRuns);
+		}
+		System.err.format("%d chunks of %d runs in %.2f sec., %d backed up, %d reassigned\n",
+				coordinator.nChunks, chunkSize, elapsed, coordinator.getBackupCount(),
+				coordinator.getReassignedCount());
+
+		// Idle workers have been told to quit; the others are doing copies
+		// of chunks that are already done
+		for( Process worker: localWorkers ) {
+			worker.destroy();
+		}
+	}
+}
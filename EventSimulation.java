@@ -0,0 +1,140 @@
+package org.avk.ants;
+
+/**
+ * Event-driven alternative to the fixed time step loop in
+ * <code>ProceduralAnts.doSimulation</code>.
+ * Instead of moving every ant by <code>timeStep</code> and checking
+ * whether two of them happened to land on the same spot, we work out
+ * when the next two ants will collide, or the next ant will reach an end
+ * of the stick, and jump straight to the earliest of those events.
+ *
+ * The collisions come from a <code>CollisionScheduler</code>, which keeps
+ * the next collision of every pair of neighbors in an indexed heap and
+ * reschedules only the pairs a collision affects. Because ants never pass
+ * each other, only neighboring ants can collide, and only the leftmost or
+ * rightmost live ant can fall off the stick, so the next fall-off is the
+ * earlier of those two and needs no queue of its own.
+ *
+ * The cost of a run is O(events * log n), independent of the stick length.
+ * The outcomes are the same as those of <code>PassThroughSolver</code>.
+ */
+public class EventSimulation {
+
+	private final double stickLength;
+	private final int debugLevel;
+	private final Ant[] ants;
+	private final CollisionScheduler scheduler;
+	private int iMin;
+	private int iMax;
+	private double simTime;
+	private long nEvents;
+	private long nCollisions;
+
+	private EventSimulation(double stickLength, int debugLevel,
+			double[] antPositions, double[] antVelocities) {
+		int numberOfAnts = antPositions.length;
+		this.stickLength = stickLength;
+		this.debugLevel = debugLevel;
+		this.ants = new Ant[numberOfAnts];
+		for( int i=0; i<numberOfAnts; i++ ) {
+			ants[i] = new Ant(i, antPositions[i], antVelocities[i]);
+		}
+		this.scheduler = new CollisionScheduler(ants);
+		this.iMin = 0;
+		this.iMax = numberOfAnts - 1;
+		this.simTime = 0.0;
+	}
+
+	/**
+	 * Run the ants until all of them have fallen off the stick.
+	 * On return <code>antPositions</code> and <code>antVelocities</code>
+	 * hold the position and velocity of each ant at the moment it fell off.
+	 *
+	 * @param stickLength in cm.
+	 * @param debugLevel prints every event if 3 or more
+	 * @param antPositions sorted, unique initial positions
+	 * @param antVelocities initial velocities
+	 * @return the time at which the last ant fell off
+	 */
+	public static double doSimulation(double stickLength, int debugLevel,
+			double[] antPositions, double[] antVelocities) {
+		EventSimulation sim = new EventSimulation(stickLength, debugLevel,
+				antPositions, antVelocities);
+		sim.run();
+		if( RunMetrics.ENABLED ) {
+			RunMetrics.current().simulationDone(sim.nEvents, sim.nCollisions);
+		}
+		for( int i=0; i<sim.ants.length; i++ ) {
+			antPositions[i] = sim.ants[i].getX();
+			antVelocities[i] = sim.ants[i].getV();
+		}
+		return sim.simTime;
+	}
+
+	private void run() {
+		if( debugLevel >= 3 ) {
+			System.out.format("\n    Time    Event\n");
+		}
+		while( iMin <= iMax ) {
+			// The next fall-off, if one of the end ants is heading out
+			int falling = -1;
+			double fallTime = Double.POSITIVE_INFINITY;
+			if( ants[iMin].getV() < 0.0 ) {
+				falling = iMin;
+				fallTime = simTime - scheduler.positionAt(iMin, simTime) / ants[iMin].getV();
+			}
+			if( ants[iMax].getV() > 0.0 ) {
+				double t = simTime
+						+ (stickLength - scheduler.positionAt(iMax, simTime)) / ants[iMax].getV();
+				if( t < fallTime ) {
+					falling = iMax;
+					fallTime = t;
+				}
+			}
+
+			if( scheduler.peekTime() < fallTime ) {
+				collide(scheduler.next());
+			} else if( falling >= 0 ) {
+				fallOff(falling, fallTime);
+			} else {
+				break;
+			}
+			nEvents++;
+		}
+	}
+
+	/**
+	 * Ant i has reached an end of the stick at time t.
+	 */
+	private void fallOff(int i, double t) {
+		simTime = t;
+		boolean leftEnd = ants[i].getV() < 0.0;
+		scheduler.disable(i, t);
+		if( RunMetrics.ENABLED ) {
+			RunMetrics.current().antFellOff(simTime);
+		}
+		if( leftEnd ) {
+			iMin++;
+			if( debugLevel >= 3 ) {
+				System.out.format(" %6.1f:  ant %2d fell off the left end\n", simTime, i);
+			}
+		} else {
+			iMax--;
+			if( debugLevel >= 3 ) {
+				System.out.format(" %6.1f:  ant %2d fell off the right end\n", simTime, i);
+			}
+		}
+	}
+
+	/**
+	 * Neighboring ants have met; the scheduler has already reversed them.
+	 */
+	private void collide(CollisionScheduler.Collision collision) {
+		simTime = collision.time;
+		nCollisions++;
+		if( debugLevel >= 3 ) {
+			System.out.format(" %6.1f:  ants %2d and %2d collided at %5.1f\n",
+					simTime, collision.left, collision.right, ants[collision.left].getX());
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package org.avk.ants;
+
+/**
+ * A fixed time step simulation in exact integer arithmetic, with a time
+ * step of half a centimeter of travel whatever the speed.
+ *
+ * Its outcomes match <code>PassThroughSolver</code> at any speed. They
+ * match the STEPPED engine only at speed 1: <code>ProceduralAnts</code>
+ * uses a time step of <code>0.5*antSpeed</code>, which is half a
+ * centimeter of travel only when the speed is 1, so at other speeds the
+ * ants of the stepped simulation move by more or less than half a
+ * centimeter per step.
+ *
+ * The ants start on whole-number positions and all move at the same speed,
+ * so if the time step is the time an ant needs to cover half a centimeter,
+ * every position the simulation ever visits is a whole number of half
+ * centimeters. Positions are kept as <code>long</code> half-units, every
+ * step moves each live ant by exactly one unit, and the time is a step
+ * count; nothing accumulates rounding error however long the run.
+ *
+ * Two neighbors have collided when they land on the same unit, which
+ * needs no <code>epsX</code>. Starting from whole numbers the gaps are
+ * always even, but for positions on odd half-units two ants heading
+ * towards each other can cross within a step; they met halfway through
+ * it, so they are put back in order and reversed.
+ */
+public class ExactSimulation {
+
+	/**
+	 * Run the ants until all of them have fallen off the stick.
+	 * On return <code>antPositions</code> and <code>antVelocities</code>
+	 * hold the position and velocity of each ant when it fell off,
+	 * half a centimeter beyond the end, as in the stepped simulation.
+	 *
+	 * @param stickLength in cm.
+	 * @param antSpeed in cm./sec.
+	 * @param antPositions sorted, unique initial positions, in whole or half cm.
+	 * @param antVelocities initial velocities of <code>+/-antSpeed</code>
+	 * @param halfUnits scratch space for at least <code>antPositions.length</code> values
+	 * @return the time at which the last ant fell off
+	 */
+	public static double doSimulation(double stickLength, double antSpeed,
+			double[] antPositions, double[] antVelocities, long[] halfUnits) {
+		int numberOfAnts = antPositions.length;
+		long end = (long)Math.floor(2.0 * stickLength);
+		for( int i=0; i<numberOfAnts; i++ ) {
+			double z = 2.0 * antPositions[i];
+			if( z != Math.rint(z) ) {
+				throw new IllegalArgumentException(String.format(
+						"Ant %d is at %f, which is not a whole number of half cm.",
+						i, antPositions[i]));
+			}
+			halfUnits[i] = (long)z;
+		}
+
+		int iMin = 0;
+		int iMax = numberOfAnts - 1;
+		long nSteps = 0;
+		long nCollisions = 0;
+		while( iMin <= iMax ) {
+			nSteps++;
+			for( int i=iMin; i<=iMax; i++ ) {
+				// Update this Ant's position
+				long newPosition = antVelocities[i] < 0.0 ? halfUnits[i] - 1 : halfUnits[i] + 1;
+				halfUnits[i] = newPosition;
+
+				if( newPosition < 0 ) {
+					// This ant just fell off the left end of the stick.
+					iMin++;
+					if( RunMetrics.ENABLED ) {
+						RunMetrics.current().antFellOff(nSteps * 0.5 / antSpeed);
+					}
+				} else if( newPosition > end ) {
+					// This ant just fell off the right end of the stick.
+					iMax--;
+					if( RunMetrics.ENABLED ) {
+						RunMetrics.current().antFellOff(nSteps * 0.5 / antSpeed);
+					}
+				} else if( i > iMin ) {
+					long gap = newPosition - halfUnits[i-1];
+					if( gap < 0 ) {
+						// The two ants crossed in mid-step; they turned
+						// around where they met and are back in order.
+						halfUnits[i] = halfUnits[i-1];
+						halfUnits[i-1] = newPosition;
+						antVelocities[i] = -antVelocities[i];
+						antVelocities[i-1] = -antVelocities[i-1];
+						nCollisions++;
+					} else if( gap == 0 && antVelocities[i] != antVelocities[i-1] ) {
+						// A collision did occur.
+						antVelocities[i] = -antVelocities[i];
+						antVelocities[i-1] = -antVelocities[i-1];
+						nCollisions++;
+					}
+				}
+			}
+		}
+
+		if( RunMetrics.ENABLED ) {
+			RunMetrics.current().simulationDone(nSteps, nCollisions);
+		}
+		for( int i=0; i<numberOfAnts; i++ ) {
+			antPositions[i] = 0.5 * halfUnits[i];
+		}
+		return nSteps * 0.5 / antSpeed;
+	}
+}
@@ -0,0 +1,107 @@
+package org.avk.ants;
+
+import java.util.Arrays;
+
+/**
+ * A min-heap of the items <code>0 .. n-1</code>, each with a time,
+ * in which the time of any item can be changed in O(log n).
+ *
+ * Used where a fixed set of candidate events (one per pair of neighbors)
+ * keeps being rescheduled, so there are never stale entries to skip.
+ * An item that has nothing scheduled has a time of infinity.
+ */
+class IndexedMinHeap {
+
+	private final double[] time;
+	// heap[0 .. n-1] holds the items; where[item] is the slot of item
+	private final int[] heap;
+	private final int[] where;
+	private final int n;
+
+	IndexedMinHeap(int n) {
+		this.n = n;
+		this.time = new double[n];
+		this.heap = new int[n];
+		this.where = new int[n];
+		Arrays.fill(time, Double.POSITIVE_INFINITY);
+		for( int i=0; i<n; i++ ) {
+			heap[i] = i;
+			where[i] = i;
+		}
+	}
+
+	int size() {
+		return n;
+	}
+
+	/**
+	 * The item with the earliest time; only valid if <code>size() &gt; 0</code>
+	 */
+	int peek() {
+		return heap[0];
+	}
+
+	/**
+	 * The earliest time, or infinity if the heap is empty
+	 */
+	double peekTime() {
+		return n > 0 ? time[heap[0]] : Double.POSITIVE_INFINITY;
+	}
+
+	double getTime(int item) {
+		return time[item];
+	}
+
+	void setTime(int item, double t) {
+		time[item] = t;
+		siftUp(where[item]);
+		siftDown(where[item]);
+	}
+
+	/**
+	 * Set the times of all items at once, in O(n)
+	 */
+	void setAll(double[] times) {
+		System.arraycopy(times, 0, time, 0, n);
+		for( int k=n/2-1; k>=0; k-- ) {
+			siftDown(k);
+		}
+	}
+
+	private void siftUp(int k) {
+		int item = heap[k];
+		while( k > 0 ) {
+			int parent = (k - 1) >>> 1;
+			if( time[heap[parent]] <= time[item] ) {
+				break;
+			}
+			place(heap[parent], k);
+			k = parent;
+		}
+		place(item, k);
+	}
+
+	private void siftDown(int k) {
+		int item = heap[k];
+		while( true ) {
+			int child = 2*k + 1;
+			if( child >= n ) {
+				break;
+			}
+			if( child + 1 < n && time[heap[child+1]] < time[heap[child]] ) {
+				child++;
+			}
+			if( time[item] <= time[heap[child]] ) {
+				break;
+			}
+			place(heap[child], k);
+			k = child;
+		}
+		place(item, k);
+	}
+
+	private void place(int item, int k) {
+		heap[k] = item;
+		where[item] = k;
+	}
+}
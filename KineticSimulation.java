@@ -0,0 +1,277 @@
+package org.avk.ants;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Event-driven simulation of ants that do not all move at the same speed.
+ *
+ * When two ants meet head-on they both turn around, each keeping its own
+ * speed. When a faster ant catches up with a slower one going the same
+ * way, it overtakes it. Ants can therefore change places, and the
+ * pass-through trick of <code>PassThroughSolver</code> no longer applies.
+ *
+ * The ants are kept in a kinetic sorted list: <code>order[k]</code> is
+ * the ant in place k from the left, and each adjacent pair of places has
+ * a certificate, "the left one stays to the left", that fails at the time
+ * the two ants meet. Certificate failure times live in an
+ * <code>IndexedMinHeap</code>. At a failure the two ants either turn
+ * around or swap places, and only the certificates of that pair and its
+ * two neighbors are recomputed. Only the ants in the first and last live
+ * places can fall off, so every event costs O(log n).
+ *
+ * With a constant speed this gives the same outcomes as EventSimulation.
+ */
+public class KineticSimulation {
+
+	private final double stickLength;
+	private final double[] x;
+	private final double[] v;
+	// x[a] was computed at lastUpdate[a]
+	private final double[] lastUpdate;
+	private final int[] order;
+	private final IndexedMinHeap certificates;
+	// The live places are lo .. hi
+	private int lo;
+	private int hi;
+	private double simTime;
+	private long collisionCount;
+	private long overtakeCount;
+	private long eventCount;
+
+	/**
+	 * @param stickLength in cm.
+	 * @param antPositions sorted, unique initial positions
+	 * @param antVelocities initial velocities, of any speed
+	 */
+	public KineticSimulation(double stickLength, double[] antPositions, double[] antVelocities) {
+		int numberOfAnts = antPositions.length;
+		this.stickLength = stickLength;
+		this.x = antPositions.clone();
+		this.v = antVelocities.clone();
+		this.lastUpdate = new double[numberOfAnts];
+		this.order = new int[numberOfAnts];
+		for( int k=0; k<numberOfAnts; k++ ) {
+			order[k] = k;
+		}
+		this.certificates = new IndexedMinHeap(Math.max(numberOfAnts - 1, 0));
+		this.lo = 0;
+		this.hi = numberOfAnts - 1;
+		this.simTime = 0.0;
+		double[] failureTimes = new double[certificates.size()];
+		for( int k=0; k<failureTimes.length; k++ ) {
+			failureTimes[k] = failureTime(k);
+		}
+		certificates.setAll(failureTimes);
+	}
+
+	/**
+	 * Run the ants until all of them have fallen off the stick.
+	 *
+	 * @return the time at which the last ant fell off
+	 */
+	public double run() {
+		while( lo <= hi ) {
+			double tCertificate = certificates.peekTime();
+			double tLeft = fallOffTime(lo);
+			double tRight = fallOffTime(hi);
+			eventCount++;
+			if( tLeft <= tCertificate && tLeft <= tRight ) {
+				simTime = tLeft;
+				advance(order[lo]);
+				lo++;
+				invalidate(lo - 1);
+				if( RunMetrics.ENABLED ) {
+					RunMetrics.current().antFellOff(simTime);
+				}
+			} else if( tRight <= tCertificate ) {
+				simTime = tRight;
+				advance(order[hi]);
+				hi--;
+				invalidate(hi + 1);
+				if( RunMetrics.ENABLED ) {
+					RunMetrics.current().antFellOff(simTime);
+				}
+			} else {
+				simTime = tCertificate;
+				meet(certificates.peek());
+			}
+		}
+		if( RunMetrics.ENABLED ) {
+			RunMetrics.current().simulationDone(eventCount, collisionCount);
+		}
+		return simTime;
+	}
+
+	/**
+	 * The ants in places k and k+1 have met.
+	 */
+	private void meet(int k) {
+		int a = order[k];
+		int b = order[k+1];
+		advance(a);
+		advance(b);
+		if( (v[a] > 0.0) != (v[b] > 0.0) ) {
+			// Head-on: both turn around and stay in place
+			v[a] = -v[a];
+			v[b] = -v[b];
+			collisionCount++;
+		} else {
+			// The one behind is faster and overtakes
+			order[k] = b;
+			order[k+1] = a;
+			overtakeCount++;
+		}
+		certificates.setTime(k, failureTime(k));
+		if( k > lo ) {
+			certificates.setTime(k-1, failureTime(k-1));
+		}
+		if( k+1 < hi ) {
+			certificates.setTime(k+1, failureTime(k+1));
+		}
+	}
+
+	/**
+	 * Place k has just gone dead; its certificates can no longer fail.
+	 */
+	private void invalidate(int k) {
+		if( k > 0 ) {
+			certificates.setTime(k-1, Double.POSITIVE_INFINITY);
+		}
+		if( k < certificates.size() ) {
+			certificates.setTime(k, Double.POSITIVE_INFINITY);
+		}
+	}
+
+	/**
+	 * When the ants in places k and k+1 meet, or infinity if they never will
+	 */
+	private double failureTime(int k) {
+		if( k < lo || k+1 > hi ) {
+			return Double.POSITIVE_INFINITY;
+		}
+		int a = order[k];
+		int b = order[k+1];
+		double closing = v[a] - v[b];
+		if( closing <= 0.0 ) {
+			return Double.POSITIVE_INFINITY;
+		}
+		double gap = positionAt(b) - positionAt(a);
+		return simTime + Math.max(gap, 0.0) / closing;
+	}
+
+	/**
+	 * When the ant in live place k falls off, or infinity if it is not
+	 * heading off the end it is at
+	 */
+	private double fallOffTime(int k) {
+		int a = order[k];
+		if( k == lo && v[a] < 0.0 ) {
+			return simTime + Math.max(positionAt(a), 0.0) / -v[a];
+		}
+		if( k == hi && v[a] > 0.0 ) {
+			return simTime + Math.max(stickLength - positionAt(a), 0.0) / v[a];
+		}
+		return Double.POSITIVE_INFINITY;
+	}
+
+	private double positionAt(int a) {
+		return x[a] + (simTime - lastUpdate[a]) * v[a];
+	}
+
+	private void advance(int a) {
+		x[a] = positionAt(a);
+		lastUpdate[a] = simTime;
+	}
+
+	/**
+	 * Replace the initial velocities with the velocities the ants had
+	 * when they fell off; the ants are numbered by initial position.
+	 *
+	 * @param stickLength in cm.
+	 * @param antPositions sorted, unique initial positions
+	 * @param antVelocities initial velocities, of any speed
+	 * @return the time at which the last ant fell off
+	 */
+	public static double doSimulation(double stickLength, double[] antPositions,
+			double[] antVelocities) {
+		KineticSimulation sim = new KineticSimulation(stickLength, antPositions, antVelocities);
+		double lastExit = sim.run();
+		System.arraycopy(sim.x, 0, antPositions, 0, antPositions.length);
+		System.arraycopy(sim.v, 0, antVelocities, 0, antVelocities.length);
+		return lastExit;
+	}
+
+	/**
+	 * Final velocity of ant a, numbered by initial position
+	 */
+	public double getVelocity(int a) {
+		return v[a];
+	}
+
+	public long getCollisionCount() {
+		return collisionCount;
+	}
+
+	public long getOvertakeCount() {
+		return overtakeCount;
+	}
+
+	/**
+	 * Fall-offs, collisions and overtakes handled so far
+	 */
+	public long getEventCount() {
+		return eventCount;
+	}
+
+	/**
+	 * One run with random positions, directions and speeds.
+	 *
+	 * @return 1 for each ant that fell off the end it faced initially, otherwise 0,
+	 * as from <code>ProceduralAnts.doRun</code>
+	 */
+	public static int[] doRun(int numberOfAnts, double stickLength, SpeedDistribution speeds,
+			RandomGenerator r) {
+		double[] antPositions = ProceduralAnts.initializePositions(stickLength, numberOfAnts, r);
+		double[] antVelocities = new double[numberOfAnts];
+		for( int i=0; i<numberOfAnts; i++ ) {
+			double speed = speeds.sample(r);
+			antVelocities[i] = r.nextBoolean() ? -speed : speed;
+		}
+		KineticSimulation sim = new KineticSimulation(stickLength, antPositions, antVelocities);
+		sim.run();
+		int[] velocitiesEqual = new int[numberOfAnts];
+		for( int i=0; i<numberOfAnts; i++ ) {
+			velocitiesEqual[i] = (antVelocities[i] == sim.getVelocity(i)) ? 1 : 0;
+		}
+		return velocitiesEqual;
+	}
+
+	/**
+	 * @param args numberOfAnts stickLength speedDistribution [seed] [# runs]
+	 */
+	public static void main(String[] args) {
+		if( args.length < 3 ) {
+			System.out.println("Usage: KineticSimulation numberOfAnts stickLength constant:s|uniform:min:max|choice:s1,s2,... [seed] [# runs]");
+			return;
+		}
+		int numberOfAnts = Integer.parseInt(args[0]);
+		double stickLength = Double.parseDouble(args[1]);
+		SpeedDistribution speeds = SpeedDistribution.parse(args[2]);
+		long seed = args.length >= 4 ? Long.parseLong(args[3]) : 2177;
+		int nRuns = args.length >= 5 ? Integer.parseInt(args[4]) : 3000;
+
+		AntRandom r = new AntRandom(seed);
+		OutcomeStatistics stats = new OutcomeStatistics(numberOfAnts);
+		for( int runIndex=0; runIndex<nRuns; runIndex++ ) {
+			stats.add(doRun(numberOfAnts, stickLength, speeds, r));
+		}
+		System.out.format("\nFinished %d runs with %d ants, speeds %s\n", nRuns, numberOfAnts, speeds);
+		System.out.format("Printing the probability that an ant falls off the same end of the stick\nthat it faced initially\n");
+		System.out.format("ant  probability  95%% interval\n");
+		for( int i=0; i<numberOfAnts; i++ ) {
+			System.out.format(" %2d  %6.4f       [%6.4f, %6.4f]\n", i, stats.getMean(i),
+					stats.getWilsonLower(i, OutcomeStatistics.Z95),
+					stats.getWilsonUpper(i, OutcomeStatistics.Z95));
+		}
+	}
+}
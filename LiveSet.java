@@ -0,0 +1,128 @@
+package org.avk.ants;
+
+import java.util.Arrays;
+
+/**
+ * The indices of the ants that are still alive, which can be walked in
+ * increasing order in time proportional to the number of live ants.
+ *
+ * Removing an ant only marks it as dead; its entry stays in the list,
+ * and a walk skips it. A walk that finds more than
+ * <code>COMPACT_FRACTION</code> of the entries dead first compacts the
+ * list, in one pass. Each entry is removed from the list at most once,
+ * so compaction costs O(1) per ant over a run, and a walk costs at most
+ * twice the number of live ants, however many ants have fallen off.
+ *
+ * A walk goes like this; ants removed during the walk are still listed:
+ * <pre>
+ *   for( int k=0, n=live.entryCount(); k&lt;n; k++ ) {
+ *       int i = live.entry(k);
+ *       if( live.contains(i) ) {
+ *           ...
+ *       }
+ *   }
+ * </pre>
+ */
+public class LiveSet {
+
+	// Compact once more than this fraction of the entries are dead
+	public static final double COMPACT_FRACTION = 0.5;
+
+	private final boolean[] live;
+	// Increasing indices, live ones and dead ones not compacted away yet
+	private final int[] entries;
+	private int length;
+	private int size;
+
+	/**
+	 * An empty set.
+	 *
+	 * @param capacity indices go from 0 to capacity-1
+	 */
+	public LiveSet(int capacity) {
+		this.live = new boolean[capacity];
+		this.entries = new int[capacity];
+		this.length = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * Add ant i; O(1) if it is beyond every listed ant, or is still listed.
+	 */
+	public void add(int i) {
+		if( live[i] ) {
+			return;
+		}
+		live[i] = true;
+		size++;
+		if( length == 0 || entries[length-1] < i ) {
+			entries[length++] = i;
+			return;
+		}
+		int k = Arrays.binarySearch(entries, 0, length, i);
+		if( k < 0 ) {
+			// Not listed, so the list is not full
+			k = -k - 1;
+			System.arraycopy(entries, k, entries, k + 1, length - k);
+			entries[k] = i;
+			length++;
+		}
+	}
+
+	/**
+	 * Ant i is dead; does nothing if it was dead already.
+	 */
+	public void remove(int i) {
+		if( live[i] ) {
+			live[i] = false;
+			size--;
+		}
+	}
+
+	public boolean contains(int i) {
+		return live[i];
+	}
+
+	/**
+	 * The number of live ants
+	 */
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		for( int k=0; k<length; k++ ) {
+			live[entries[k]] = false;
+		}
+		length = 0;
+		size = 0;
+	}
+
+	/**
+	 * Start a walk: compact the list if it is due, and return the
+	 * number of entries to walk.
+	 */
+	public int entryCount() {
+		if( length - size > COMPACT_FRACTION * length ) {
+			compact();
+		}
+		return length;
+	}
+
+	/**
+	 * The index of entry k, which may have been removed since the walk began
+	 */
+	public int entry(int k) {
+		return entries[k];
+	}
+
+	private void compact() {
+		int n = 0;
+		for( int k=0; k<length; k++ ) {
+			if( live[entries[k]] ) {
+				entries[n++] = entries[k];
+			}
+		}
+		length = n;
+	}
+}
@@ -0,0 +1,58 @@
+package org.avk.ants;
+
+import java.util.Arrays;
+
+/**
+ * Sends the trajectory to the browser through <code>VisualizerServer</code>.
+ * Positions are only collected for the steps the server will take a
+ * frame of; for all other steps the sink does nothing.
+ */
+public class LiveTrajectorySink implements TrajectorySink {
+
+	private final VisualizerServer server;
+	private final double stickLength;
+	private final double[] positions;
+	private boolean collecting;
+	private double simTime;
+
+	public LiveTrajectorySink(VisualizerServer server, int numberOfAnts, double stickLength) {
+		this.server = server;
+		this.stickLength = stickLength;
+		this.positions = new double[numberOfAnts];
+	}
+
+	public void beginStep(double simTime) {
+		this.simTime = simTime;
+		collecting = server.wantsFrame();
+		if( collecting ) {
+			Arrays.fill(positions, Double.NaN);
+		}
+	}
+
+	public void ant(int i, double position, boolean touchingNext) {
+		if( collecting ) {
+			positions[i] = position;
+		}
+	}
+
+	public void fallen(int i) {
+	}
+
+	@Override
+	public void fallen(int from, int to) {
+	}
+
+	public void endStep(int iMin, int iMax) {
+		if( collecting ) {
+			server.publish(simTime, stickLength, positions, positions.length);
+		}
+	}
+
+	public void flush() {
+	}
+
+	@Override
+	public void close() {
+		server.finish();
+	}
+}
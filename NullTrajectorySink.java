@@ -0,0 +1,26 @@
+package org.avk.ants;
+
+/**
+ * Throws the trajectory away; for timing a simulation without its output.
+ */
+public class NullTrajectorySink implements TrajectorySink {
+
+	public void beginStep(double simTime) {
+	}
+
+	public void ant(int i, double position, boolean touchingNext) {
+	}
+
+	public void fallen(int i) {
+	}
+
+	@Override
+	public void fallen(int from, int to) {
+	}
+
+	public void endStep(int iMin, int iMax) {
+	}
+
+	public void flush() {
+	}
+}
@@ -0,0 +1,165 @@
+package org.avk.ants;
+
+import java.util.Arrays;
+
+/**
+ * Running statistics of the per-ant "same side" outcomes of a campaign.
+ *
+ * For every ant we keep the number of runs, the mean outcome and the sum
+ * of squared deviations from the mean, updated one run at a time with
+ * Welford's method. Two accumulators, or an accumulator and a batch of
+ * counts, combine with the pairwise formula of Chan et al., so partial
+ * results from threads or batches can be merged in any order.
+ *
+ * The outcome of a run is 0 or 1, so the mean is the probability that
+ * the ant falls off the end it faced initially. Its confidence interval
+ * is the Wilson score interval, which stays inside [0, 1] and behaves
+ * well for probabilities near 0 or 1 and for small numbers of runs.
+ */
+public class OutcomeStatistics {
+
+	// z for a two-sided 95% confidence interval
+	public static final double Z95 = 1.959963984540054;
+
+	private final int numberOfAnts;
+	private final double[] mean;
+	private final double[] m2;
+	private long runCount;
+
+	public OutcomeStatistics(int numberOfAnts) {
+		this.numberOfAnts = numberOfAnts;
+		this.mean = new double[numberOfAnts];
+		this.m2 = new double[numberOfAnts];
+		this.runCount = 0;
+	}
+
+	/**
+	 * Add the outcome of one run, as returned by <code>ProceduralAnts.doRun</code>.
+	 */
+	public void add(int[] velocitiesEqual) {
+		runCount++;
+		for( int i=0; i<numberOfAnts; i++ ) {
+			double delta = velocitiesEqual[i] - mean[i];
+			mean[i] += delta / runCount;
+			m2[i] += delta * (velocitiesEqual[i] - mean[i]);
+		}
+	}
+
+	/**
+	 * Add a batch of <code>nRuns</code> runs, given the per-ant count
+	 * of "same side" outcomes, as returned by <code>ParallelRunner.run</code>.
+	 */
+	public void addCounts(long nRuns, long[] counts) {
+		if( nRuns == 0 ) {
+			return;
+		}
+		for( int i=0; i<numberOfAnts; i++ ) {
+			double batchMean = counts[i] / (double)nRuns;
+			// Sum of squared deviations of counts[i] ones and the rest zeros
+			double batchM2 = counts[i] * (1.0 - batchMean);
+			combine(i, nRuns, batchMean, batchM2);
+		}
+		runCount += nRuns;
+	}
+
+	/**
+	 * Add all runs of another accumulator for the same number of ants.
+	 */
+	public void merge(OutcomeStatistics other) {
+		if( other.runCount == 0 ) {
+			return;
+		}
+		for( int i=0; i<numberOfAnts; i++ ) {
+			combine(i, other.runCount, other.mean[i], other.m2[i]);
+		}
+		runCount += other.runCount;
+	}
+
+	private void combine(int i, long n, double otherMean, double otherM2) {
+		double total = (double)runCount + n;
+		double delta = otherMean - mean[i];
+		mean[i] += delta * n / total;
+		m2[i] += otherM2 + delta * delta * runCount * n / total;
+	}
+
+	public void reset() {
+		Arrays.fill(mean, 0.0);
+		Arrays.fill(m2, 0.0);
+		runCount = 0;
+	}
+
+	public long getRunCount() {
+		return runCount;
+	}
+
+	public int getNumberOfAnts() {
+		return numberOfAnts;
+	}
+
+	/**
+	 * The observed probability that ant i falls off the end it faced initially
+	 */
+	public double getMean(int i) {
+		return mean[i];
+	}
+
+	/**
+	 * Sample variance of the outcomes of ant i
+	 */
+	public double getVariance(int i) {
+		return runCount > 1 ? m2[i] / (runCount - 1) : 0.0;
+	}
+
+	/**
+	 * Standard error of <code>getMean(i)</code>
+	 */
+	public double getStandardError(int i) {
+		return runCount > 0 ? Math.sqrt(getVariance(i) / runCount) : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Lower end of the Wilson score interval for ant i
+	 *
+	 * @param z e.g. <code>Z95</code>
+	 */
+	public double getWilsonLower(int i, double z) {
+		if( runCount == 0 ) {
+			return 0.0;
+		}
+		return Math.max(0.0, wilsonCenter(i, z) - wilsonHalfWidth(i, z));
+	}
+
+	/**
+	 * Upper end of the Wilson score interval for ant i
+	 *
+	 * @param z e.g. <code>Z95</code>
+	 */
+	public double getWilsonUpper(int i, double z) {
+		if( runCount == 0 ) {
+			return 1.0;
+		}
+		return Math.min(1.0, wilsonCenter(i, z) + wilsonHalfWidth(i, z));
+	}
+
+	/**
+	 * The widest Wilson interval of any ant; 1 before the first run.
+	 */
+	public double getMaxWilsonWidth(double z) {
+		double width = 0.0;
+		for( int i=0; i<numberOfAnts; i++ ) {
+			width = Math.max(width, getWilsonUpper(i, z) - getWilsonLower(i, z));
+		}
+		return runCount > 0 ? width : 1.0;
+	}
+
+	private double wilsonCenter(int i, double z) {
+		double z2n = z * z / runCount;
+		return (mean[i] + 0.5 * z2n) / (1.0 + z2n);
+	}
+
+	private double wilsonHalfWidth(int i, double z) {
+		double p = mean[i];
+		double z2n = z * z / runCount;
+		return z * Math.sqrt(p * (1.0 - p) / runCount + 0.25 * z2n / runCount) / (1.0 + z2n);
+	}
+}
@@ -0,0 +1,107 @@
+package org.avk.ants;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Spreads a batch of <code>ProceduralAnts.doRun</code> calls over
+ * a fork-join pool.
+ *
+ * Every run draws from its own stream, <code>AntRandom.forRun</code> of
+ * the campaign seed and the run's index, so a run produces the same ants
+ * no matter which thread executes it or in what order. Each task does
+ * its runs in its own <code>SimulationContext</code>, so runs do not
+ * allocate, and the per-ant counts of the tasks are added together as
+ * they complete. Integer addition does not depend on the order, so for
+ * a given seed the totals are identical for any number of threads.
+ */
+public class ParallelRunner {
+
+	// Ranges of at most this many runs are not split any further
+	static final int GRAIN = 64;
+
+	/**
+	 * Count, for each ant, the runs in which it fell off the same end
+	 * of the stick that it faced initially.
+	 *
+	 * @param pool executes the runs
+	 * @param numberOfAnts
+	 * @param stickLength
+	 * @param antSpeed
+	 * @param seed identifies the campaign
+	 * @param firstRun index of the first run to do
+	 * @param nRuns number of runs to do
+	 * @param engine how to simulate each run
+	 * @return per-ant count of "same side" outcomes
+	 */
+	public static long[] run(ForkJoinPool pool, int numberOfAnts, double stickLength,
+			double antSpeed, long seed, long firstRun, long nRuns, ProceduralAnts.Engine engine) {
+		return pool.invoke(new RunRange(numberOfAnts, stickLength, antSpeed,
+				seed, firstRun, firstRun + nRuns, engine));
+	}
+
+	/**
+	 * Runs <code>[from, to)</code>, split in halves until small enough.
+	 */
+	static class RunRange extends RecursiveTask<long[]> {
+		private static final long serialVersionUID = 1L;
+		final int numberOfAnts;
+		final double stickLength;
+		final double antSpeed;
+		final long seed;
+		final long from;
+		final long to;
+		final ProceduralAnts.Engine engine;
+
+		RunRange(int numberOfAnts, double stickLength, double antSpeed,
+				long seed, long from, long to, ProceduralAnts.Engine engine) {
+			this.numberOfAnts = numberOfAnts;
+			this.stickLength = stickLength;
+			this.antSpeed = antSpeed;
+			this.seed = seed;
+			this.from = from;
+			this.to = to;
+			this.engine = engine;
+		}
+
+		@Override
+		protected long[] compute() {
+			// A batch needs enough sticks to fill its rows
+			long grain = engine == ProceduralAnts.Engine.BATCHED ? BatchSimulation.DEFAULT_CAPACITY : GRAIN;
+			if( to - from > grain ) {
+				long middle = from + (to - from) / 2;
+				RunRange left = new RunRange(numberOfAnts, stickLength, antSpeed,
+						seed, from, middle, engine);
+				RunRange right = new RunRange(numberOfAnts, stickLength, antSpeed,
+						seed, middle, to, engine);
+				left.fork();
+				long[] counts = right.compute();
+				long[] leftCounts = left.join();
+				for( int i=0; i<numberOfAnts; i++ ) {
+					counts[i] += leftCounts[i];
+				}
+				return counts;
+			}
+			if( engine == ProceduralAnts.Engine.BATCHED ) {
+				// The whole range is one batch of sticks
+				BatchSimulation batch = new BatchSimulation((int)(to - from), numberOfAnts,
+						stickLength, antSpeed);
+				AntRandom r = new AntRandom(0);
+				for( long runIndex=from; runIndex<to; runIndex++ ) {
+					batch.addStick(r.setRun(seed, runIndex));
+				}
+				batch.run();
+				long[] counts = new long[numberOfAnts];
+				batch.addSameSideCounts(counts);
+				return counts;
+			}
+			SimulationContext context = new SimulationContext(numberOfAnts, stickLength,
+					antSpeed, engine);
+			AntRandom r = new AntRandom(0);
+			for( long runIndex=from; runIndex<to; runIndex++ ) {
+				context.doRun(r.setRun(seed, runIndex));
+			}
+			return context.getSameSideCounts();
+		}
+	}
+}
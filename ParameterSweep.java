@@ -0,0 +1,229 @@
+package org.avk.ants;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs <code>ProceduralAnts</code> campaigns for a whole grid of
+ * configurations in one JVM.
+ *
+ * The grid is read from a spec file of <code>name = values</code> lines,
+ * where the values are a comma-separated list and whole numbers may also
+ * be given as a range <code>from..to</code>:
+ * <pre>
+ *   # comment
+ *   numberOfAnts = 5, 7, 10..20
+ *   stickLength = 100, 1000
+ *   antSpeed = 1.0
+ *   seed = 2177
+ *   nRuns = 3000
+ *   engine = pass-through
+ *   threads = 8
+ * </pre>
+ * Every combination of numberOfAnts, stickLength and antSpeed is a
+ * configuration. Its runs are split into batches of <code>BATCH</code>
+ * (the last one may be shorter), and every batch that is not already in
+ * the <code>ResultCache</code> is submitted to one shared fork-join pool.
+ * Runs use the seeds of <code>ParallelRunner</code>, so the results are
+ * the same as <code>ProceduralAnts</code> with that number of threads.
+ *
+ * The probability table of each configuration is written as CSV, in
+ * grid order, as soon as all of its batches are done.
+ */
+public class ParameterSweep {
+
+	// Runs per task, and the granularity of the cache
+	static final long BATCH = 1024;
+
+	/**
+	 * @param args spec file, then optionally the output CSV file (default: standard output).
+	 * The cache directory is <code>-Dants.cache</code> (default ants-cache).
+	 */
+	public static void main(String[] args) throws IOException {
+		if( args.length < 1 ) {
+			System.out.println("Usage: ParameterSweep specFile [output.csv]");
+			return;
+		}
+		List<Integer> antCounts = new ArrayList<Integer>();
+		List<Double> stickLengths = new ArrayList<Double>();
+		List<Double> antSpeeds = new ArrayList<Double>();
+		long seed = 2177;
+		long nRuns = 3000;
+		ProceduralAnts.Engine engine = ProceduralAnts.Engine.PASS_THROUGH;
+		int nThreads = Runtime.getRuntime().availableProcessors();
+
+		try {
+			for( String line: Files.readAllLines(Path.of(args[0]), StandardCharsets.UTF_8) ) {
+				int hash = line.indexOf('#');
+				if( hash >= 0 ) {
+					line = line.substring(0, hash);
+				}
+				if( line.isBlank() ) {
+					continue;
+				}
+				int eq = line.indexOf('=');
+				if( eq < 0 ) {
+					throw new IllegalArgumentException("Expected name = values: " + line);
+				}
+				String name = line.substring(0, eq).trim();
+				String value = line.substring(eq + 1).trim();
+				if( name.equals("numberOfAnts") ) {
+					for( long n: parseWholeNumbers(value) ) {
+						antCounts.add((int)n);
+					}
+				} else if( name.equals("stickLength") ) {
+					stickLengths.addAll(parseNumbers(value));
+				} else if( name.equals("antSpeed") ) {
+					antSpeeds.addAll(parseNumbers(value));
+				} else if( name.equals("seed") ) {
+					seed = Long.parseLong(value);
+				} else if( name.equals("nRuns") ) {
+					nRuns = Long.parseLong(value);
+				} else if( name.equals("engine") ) {
+					engine = ProceduralAnts.Engine.valueOf(value.toUpperCase().replace('-', '_'));
+				} else if( name.equals("threads") ) {
+					nThreads = Integer.parseInt(value);
+				} else {
+					throw new IllegalArgumentException("Unknown setting: " + name);
+				}
+			}
+		} catch( RuntimeException e ) {
+			System.out.format("Could not parse %s: %s\n", args[0], e);
+			return;
+		}
+		if( antCounts.isEmpty() ) {
+			antCounts.add(7);
+		}
+		if( stickLengths.isEmpty() ) {
+			stickLengths.add(100.0);
+		}
+		if( antSpeeds.isEmpty() ) {
+			antSpeeds.add(1.0);
+		}
+		// Every point of the grid must be possible before any of it is run
+		for( int numberOfAnts: antCounts ) {
+			for( double stickLength: stickLengths ) {
+				if( numberOfAnts < 0 || numberOfAnts > PositionSampler.positionCount(stickLength) ) {
+					System.out.format("Could not parse %s: cannot place %d ants at unique positions on a %s cm. stick\n",
+							args[0], numberOfAnts, stickLength);
+					return;
+				}
+			}
+		}
+
+		PrintStream out = System.out;
+		if( args.length >= 2 ) {
+			out = new PrintStream(Files.newOutputStream(Path.of(args[1])), false, "UTF-8");
+		}
+		ResultCache cache = new ResultCache(Path.of(System.getProperty("ants.cache", "ants-cache")));
+		ForkJoinPool pool = new ForkJoinPool(nThreads);
+
+		// Submit every missing batch of every configuration before waiting for any
+		List<Cell> cells = new ArrayList<Cell>();
+		for( int numberOfAnts: antCounts ) {
+			for( double stickLength: stickLengths ) {
+				for( double antSpeed: antSpeeds ) {
+					Cell cell = new Cell(numberOfAnts, stickLength, antSpeed);
+					for( long firstRun=0; firstRun<nRuns; firstRun+=BATCH ) {
+						long n = Math.min(BATCH, nRuns - firstRun);
+						long[] counts = cache.get(numberOfAnts, stickLength, antSpeed,
+								seed, engine, firstRun, n);
+						if( counts != null ) {
+							cell.add(counts);
+							cell.nCached++;
+						} else {
+							cell.pending.add(pool.submit(new ParallelRunner.RunRange(numberOfAnts,
+									stickLength, antSpeed, seed, firstRun, firstRun + n, engine)));
+						}
+					}
+					cells.add(cell);
+				}
+			}
+		}
+
+		long startTime = System.nanoTime();
+		int nComputed = 0;
+		int nCached = 0;
+		out.println("numberOfAnts,stickLength,antSpeed,seed,nRuns,ant,probability");
+		for( Cell cell: cells ) {
+			for( ForkJoinTask<long[]> task: cell.pending ) {
+				long[] counts = task.join();
+				ParallelRunner.RunRange range = (ParallelRunner.RunRange)task;
+				cache.put(cell.numberOfAnts, cell.stickLength, cell.antSpeed, seed, engine,
+						range.from, range.to - range.from, counts);
+				cell.add(counts);
+				nComputed++;
+			}
+			nCached += cell.nCached;
+			for( int i=0; i<cell.numberOfAnts; i++ ) {
+				out.format("%d,%s,%s,%d,%d,%d,%.6f\n", cell.numberOfAnts, cell.stickLength,
+						cell.antSpeed, seed, nRuns, i, cell.counts[i] / (double)nRuns);
+			}
+			out.flush();
+		}
+		pool.shutdown();
+		if( out != System.out ) {
+			out.close();
+		}
+		System.err.format("%d configurations: %d batches computed in %.1f sec., %d from the cache\n",
+				cells.size(), nComputed, (System.nanoTime() - startTime) * 1e-9, nCached);
+	}
+
+	/**
+	 * One configuration of the grid and its batches.
+	 */
+	static class Cell {
+		final int numberOfAnts;
+		final double stickLength;
+		final double antSpeed;
+		final long[] counts;
+		final List<ForkJoinTask<long[]>> pending = new ArrayList<ForkJoinTask<long[]>>();
+		int nCached;
+
+		Cell(int numberOfAnts, double stickLength, double antSpeed) {
+			this.numberOfAnts = numberOfAnts;
+			this.stickLength = stickLength;
+			this.antSpeed = antSpeed;
+			this.counts = new long[numberOfAnts];
+		}
+
+		void add(long[] batchCounts) {
+			for( int i=0; i<numberOfAnts; i++ ) {
+				counts[i] += batchCounts[i];
+			}
+		}
+	}
+
+	static List<Double> parseNumbers(String values) {
+		List<Double> retval = new ArrayList<Double>();
+		for( String value: values.split(",") ) {
+			retval.add(Double.parseDouble(value.trim()));
+		}
+		return retval;
+	}
+
+	static List<Long> parseWholeNumbers(String values) {
+		List<Long> retval = new ArrayList<Long>();
+		for( String value: values.split(",") ) {
+			value = value.trim();
+			int dots = value.indexOf("..");
+			if( dots >= 0 ) {
+				long from = Long.parseLong(value.substring(0, dots).trim());
+				long to = Long.parseLong(value.substring(dots + 2).trim());
+				for( long n=from; n<=to; n++ ) {
+					retval.add(n);
+				}
+			} else {
+				retval.add(Long.parseLong(value));
+			}
+		}
+		return retval;
+	}
+}
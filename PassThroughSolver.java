@@ -0,0 +1,94 @@
+package org.avk.ants;
+
+/**
+ * Solves a run without simulating any collisions.
+ *
+ * When two ants collide they both reverse direction. Since all ants
+ * move at the same speed, that looks exactly like the two ants passing
+ * through each other and swapping labels. So we can pretend the ants
+ * are ghosts, compute when and where each ghost leaves the stick, and
+ * then hand those exit events back to the real ants: because real ants
+ * never pass each other, the k ghosts that leave by the left end belong
+ * to the k leftmost ants (earliest exit to ant 0), and the rest belong
+ * to the remaining ants (earliest right exit to the rightmost ant).
+ *
+ * With the positions already sorted, the left exits come out in
+ * increasing order and the right exits in decreasing order, so the
+ * whole solution is O(n) for the sorted positions of
+ * <code>ProceduralAnts.initializePositions</code>.
+ */
+public class PassThroughSolver {
+
+	/**
+	 * Replace the initial positions and velocities of the ants with
+	 * their positions and velocities at the moment they fall off.
+	 *
+	 * @param stickLength in cm.
+	 * @param antPositions sorted, unique initial positions
+	 * @param antVelocities initial velocities, all of the same speed
+	 * @param exitTimes if not null, receives the time at which each ant falls off
+	 * @return the time at which the last ant fell off
+	 */
+	public static double solve(double stickLength,
+			double[] antPositions, double[] antVelocities, double[] exitTimes) {
+		int numberOfAnts = antPositions.length;
+		if( numberOfAnts == 0 ) {
+			return 0.0;
+		}
+		double antSpeed = Math.abs(antVelocities[0]);
+
+		// The number of ghosts heading left is the number of
+		// real ants that will fall off the left end.
+		int nLeft = 0;
+		for( int i=0; i<numberOfAnts; i++ ) {
+			if( antVelocities[i] < 0.0 ) {
+				nLeft++;
+			}
+		}
+
+		// Left-moving ghosts, in order of position, leave in order of time;
+		// the i-th of them to leave is real ant i.
+		double lastExit = 0.0;
+		int iLeft = 0;
+		int iRight = numberOfAnts - 1;
+		for( int i=0; i<numberOfAnts; i++ ) {
+			if( antVelocities[i] < 0.0 ) {
+				double t = antPositions[i] / antSpeed;
+				if( exitTimes != null ) {
+					exitTimes[iLeft] = t;
+				}
+				if( RunMetrics.ENABLED ) {
+					RunMetrics.current().antFellOff(t);
+				}
+				lastExit = Math.max(lastExit, t);
+				iLeft++;
+			}
+		}
+		// Right-moving ghosts, from the right end inwards, leave in order
+		// of time; the i-th of them to leave is real ant n-1-i.
+		for( int i=numberOfAnts-1; i>=0; i-- ) {
+			if( antVelocities[i] >= 0.0 ) {
+				double t = (stickLength - antPositions[i]) / antSpeed;
+				if( exitTimes != null ) {
+					exitTimes[iRight] = t;
+				}
+				if( RunMetrics.ENABLED ) {
+					RunMetrics.current().antFellOff(t);
+				}
+				lastExit = Math.max(lastExit, t);
+				iRight--;
+			}
+		}
+
+		for( int i=0; i<numberOfAnts; i++ ) {
+			if( i < nLeft ) {
+				antPositions[i] = 0.0;
+				antVelocities[i] = -antSpeed;
+			} else {
+				antPositions[i] = stickLength;
+				antVelocities[i] = antSpeed;
+			}
+		}
+		return lastExit;
+	}
+}
@@ -0,0 +1,275 @@
+package org.avk.ants;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Picks <code>numberOfAnts</code> distinct whole-number positions out of
+ * <code>0, 1, ..., nPositions-1</code>, every such set equally likely,
+ * and returns them in increasing order.
+ *
+ * Drawing positions until enough distinct ones have come up is a coupon
+ * collector's problem: as the ants fill up the stick it takes ever more
+ * draws to hit a free spot, and it never ends if there are more ants than
+ * spots. Instead, the sampler uses one of three methods, chosen by the
+ * density <code>numberOfAnts / nPositions</code>:
+ * <ul>
+ * <li>SELECTION, below 1/16: Vitter's Algorithm D, which skips from one
+ * chosen position to the next. It takes O(numberOfAnts) time, no memory,
+ * and its output is already sorted, however long the stick.</li>
+ * <li>FLOYD, up to 1/2: Floyd's algorithm, which takes exactly one draw
+ * per ant, marking the chosen positions in a bitmap that is then read
+ * back in order.</li>
+ * <li>DENSE, above 1/2: Floyd's algorithm picks the positions that stay
+ * empty instead, and every position that is not marked gets an ant.
+ * 10^6 ants on a 10^6 cm. stick take a single draw.</li>
+ * </ul>
+ * A sampler keeps its bitmap between calls, so it does not allocate.
+ * It is not thread-safe; give each thread its own.
+ */
+public class PositionSampler {
+
+	public enum Strategy { SELECTION, FLOYD, DENSE }
+
+	/**
+	 * Identifies the way positions are drawn, for results that depend on
+	 * the exact positions. The draw-until-distinct placement that came
+	 * before this class was version 1.
+	 */
+	public static final String NAME = "sampler2";
+
+	// Algorithm D switches to Algorithm A when this many times the sample is not less than the population
+	private static final int ALPHA_INVERSE = 13;
+
+	private final long nPositions;
+	private final int numberOfAnts;
+	private final Strategy strategy;
+	// One bit per position, for FLOYD and DENSE; all clear between calls
+	private final long[] marked;
+
+	/**
+	 * A sampler for a stick of the given length, with the strategy that suits the density.
+	 *
+	 * @throws IllegalArgumentException if the ants do not fit on the stick
+	 */
+	public static PositionSampler forStick(double stickLength, int numberOfAnts) {
+		return new PositionSampler(positionCount(stickLength), numberOfAnts);
+	}
+
+	/**
+	 * The number of whole-number positions on a stick: 0 to <code>stickLength</code>, both included
+	 */
+	public static long positionCount(double stickLength) {
+		return (long)Math.floor(stickLength) + 1;
+	}
+
+	/**
+	 * The strategy that suits <code>numberOfAnts</code> ants in <code>nPositions</code> positions
+	 */
+	public static Strategy choose(long nPositions, int numberOfAnts) {
+		if( 16L * numberOfAnts < nPositions ) {
+			return Strategy.SELECTION;
+		}
+		return 2L * numberOfAnts <= nPositions ? Strategy.FLOYD : Strategy.DENSE;
+	}
+
+	public PositionSampler(long nPositions, int numberOfAnts) {
+		this(nPositions, numberOfAnts, choose(nPositions, numberOfAnts));
+	}
+
+	/**
+	 * @throws IllegalArgumentException if there are more ants than positions
+	 */
+	public PositionSampler(long nPositions, int numberOfAnts, Strategy strategy) {
+		if( numberOfAnts < 0 || numberOfAnts > nPositions ) {
+			throw new IllegalArgumentException(String.format(
+					"Cannot place %d ants at unique positions on a %d cm. stick",
+					numberOfAnts, nPositions - 1));
+		}
+		if( strategy != Strategy.SELECTION && (nPositions + 63) / 64 > Integer.MAX_VALUE - 8 ) {
+			throw new IllegalArgumentException(String.format(
+					"%d positions are too many for the %s strategy", nPositions, strategy));
+		}
+		this.nPositions = nPositions;
+		this.numberOfAnts = numberOfAnts;
+		this.strategy = strategy;
+		this.marked = strategy == Strategy.SELECTION ? null : new long[(int)((nPositions + 63) / 64)];
+	}
+
+	public Strategy getStrategy() {
+		return strategy;
+	}
+
+	/**
+	 * A new array of sorted, distinct, whole-number positions
+	 */
+	public double[] sample(RandomGenerator r) {
+		double[] positions = new double[numberOfAnts];
+		sample(r, positions, 0);
+		return positions;
+	}
+
+	/**
+	 * Put sorted, distinct, whole-number positions in
+	 * <code>positions[offset .. offset+numberOfAnts-1]</code>.
+	 */
+	public void sample(RandomGenerator r, double[] positions, int offset) {
+		if( strategy == Strategy.SELECTION ) {
+			selectionSample(r, positions, offset);
+		} else if( strategy == Strategy.FLOYD ) {
+			floydMark(r, numberOfAnts);
+			readMarked(positions, offset, 0L);
+		} else {
+			floydMark(r, (int)(nPositions - numberOfAnts));
+			readMarked(positions, offset, -1L);
+		}
+	}
+
+	/**
+	 * Floyd's algorithm: mark <code>m</code> distinct positions, one draw each.
+	 * After choosing among the first j positions, draw from the first j+1;
+	 * if that position is already marked, mark position j instead, which
+	 * could not have been chosen before.
+	 */
+	private void floydMark(RandomGenerator r, int m) {
+		for( long j=nPositions-m; j<nPositions; j++ ) {
+			long t = r.nextLong(j + 1);
+			if( (marked[(int)(t >>> 6)] & (1L << t)) != 0 ) {
+				t = j;
+			}
+			marked[(int)(t >>> 6)] |= 1L << t;
+		}
+	}
+
+	/**
+	 * Write out, in order, the positions whose bit differs from
+	 * <code>flip</code> (0: the marked ones, -1: the others),
+	 * and clear the bitmap for the next call.
+	 */
+	private void readMarked(double[] positions, int offset, long flip) {
+		int n = offset;
+		for( int w=0; w<marked.length; w++ ) {
+			long bits = marked[w] ^ flip;
+			if( w == marked.length - 1 && (nPositions & 63) != 0 ) {
+				// No positions past the end of the stick
+				bits &= (1L << nPositions) - 1;
+			}
+			while( bits != 0 ) {
+				positions[n++] = 64L * w + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+			}
+		}
+		Arrays.fill(marked, 0L);
+	}
+
+	/**
+	 * Vitter's Algorithm D (ACM TOMS 13, 1987): the gap to the next chosen
+	 * position is drawn directly, by rejection from a continuous
+	 * approximation of its distribution, so each ant costs O(1) expected
+	 * time. Once the ants left are more than 1/13 of the positions left,
+	 * it finishes with the simpler Algorithm A.
+	 */
+	private void selectionSample(RandomGenerator r, double[] positions, int offset) {
+		int index = offset;
+		long n = numberOfAnts;
+		long bigN = nPositions;
+		long current = -1;
+		if( n == 0 ) {
+			return;
+		}
+
+		double nReal = n;
+		double nInverse = 1.0 / nReal;
+		double bigNReal = bigN;
+		double vPrime = Math.exp(Math.log(r.nextDouble()) * nInverse);
+		long qu1 = -n + 1 + bigN;
+		double qu1Real = -nReal + 1.0 + bigNReal;
+		long threshold = -ALPHA_INVERSE * n;
+
+		while( n > 1 && threshold < bigN ) {
+			double nMin1Inverse = 1.0 / (-1.0 + nReal);
+			long s;
+			while( true ) {
+				// D2: X is the continuous approximation of the gap
+				double x;
+				while( true ) {
+					x = bigNReal * (-vPrime + 1.0);
+					s = (long)x;
+					if( s < qu1 ) {
+						break;
+					}
+					vPrime = Math.exp(Math.log(r.nextDouble()) * nInverse);
+				}
+				double u = r.nextDouble();
+				double negSReal = -s;
+
+				// D3: accept if U is under the squeeze
+				double y1 = Math.exp(Math.log(u * bigNReal / qu1Real) * nMin1Inverse);
+				vPrime = y1 * (-x / bigNReal + 1.0) * (qu1Real / (negSReal + qu1Real));
+				if( vPrime <= 1.0 ) {
+					break;
+				}
+
+				// D4: otherwise compare with the exact distribution
+				double y2 = 1.0;
+				double top = -1.0 + bigNReal;
+				double bottom;
+				long limit;
+				if( n - 1 > s ) {
+					bottom = -nReal + bigNReal;
+					limit = -s + bigN;
+				} else {
+					bottom = -1.0 + negSReal + bigNReal;
+					limit = qu1;
+				}
+				for( long t=bigN-1; t>=limit; t-- ) {
+					y2 = (y2 * top) / bottom;
+					top--;
+					bottom--;
+				}
+				if( bigNReal / (-x + bigNReal) >= y1 * Math.exp(Math.log(y2) * nMin1Inverse) ) {
+					vPrime = Math.exp(Math.log(r.nextDouble()) * nMin1Inverse);
+					break;
+				}
+				vPrime = Math.exp(Math.log(r.nextDouble()) * nInverse);
+			}
+
+			// D5: skip s positions and take the next one
+			current += s + 1;
+			positions[index++] = current;
+			bigN = -s + (bigN - 1);
+			bigNReal = -s + (-1.0 + bigNReal);
+			n--;
+			nReal--;
+			nInverse = nMin1Inverse;
+			qu1 = -s + qu1;
+			qu1Real = -s + qu1Real;
+			threshold += ALPHA_INVERSE;
+		}
+
+		if( n > 1 ) {
+			// Algorithm A: each position in turn is skipped with the right probability
+			long top = bigN - n;
+			bigNReal = bigN;
+			while( n >= 2 ) {
+				double v = r.nextDouble();
+				long s = 0;
+				double quotient = top / bigNReal;
+				while( quotient > v ) {
+					s++;
+					top--;
+					bigNReal--;
+					quotient = quotient * top / bigNReal;
+				}
+				current += s + 1;
+				positions[index++] = current;
+				bigNReal--;
+				n--;
+			}
+			current += (long)(Math.rint(bigNReal) * r.nextDouble()) + 1;
+		} else {
+			current += (long)(bigN * vPrime) + 1;
+		}
+		positions[index] = current;
+	}
+}
@@ -1,14 +1,32 @@
 package org.avk.ants;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.lang.Math;
+import java.nio.file.Path;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.random.RandomGenerator;
 
 public class ProceduralAnts {
 
+	/**
+	 * The ways we know how to run a simulation.
+	 * STEPPED moves every ant by a fixed time step (see doSimulation),
+	 * EVENT_DRIVEN jumps from one collision or fall-off to the next
+	 * (see EventSimulation), and PASS_THROUGH skips the collisions
+	 * altogether (see PassThroughSolver). VECTORIZED gives the same
+	 * results as STEPPED, one pass over all the ants at a time
+	 * (see SteppingKernel). EXACT is STEPPED in integer half-centimeters,
+	 * without any rounding error (see ExactSimulation). BATCHED gives the
+	 * same results as STEPPED, for many sticks in one pass (see BatchSimulation);
+	 * a single run is the same as STEPPED. KINETIC is EVENT_DRIVEN for ants
+	 * that may have different speeds (see KineticSimulation).
+	 */
+	public enum Engine { STEPPED, EVENT_DRIVEN, PASS_THROUGH, VECTORIZED, EXACT, BATCHED, KINETIC }
+
 	/**
 	 * ProceduralAnts uses procedures to modularize the code,
 	 * unlike SimplestAnts, which is like a big ball of mud.
@@ -16,7 +34,7 @@ public class ProceduralAnts {
 	 * DONE: ensure that each ant has a unique position.
 	 * DONE: simplify ant management, reduce use of iMin and iMax.
 	 * DONE: create structures for (a) doing multiple runs, (b) accumulating counts, (c) presenting results. 
-	 * TODO: Introduce timeToCollision and variable-sized time steps
+	 * DONE: Introduce timeToCollision and variable-sized time steps (Engine.EVENT_DRIVEN)
 	 * 
 	 * @param args command-line arguments
 	 */
@@ -25,8 +43,11 @@ public class ProceduralAnts {
 		int numberOfAnts = 7;		// Number of ants to simulate
 		double stickLength = 100.0;	// Default: 100 cm.
 		double antSpeed = 1.0;		// Default: 1.0 cm./sec.
-		int seed = 2177;			// Seed value for Random number generator
+		int seed = 2177;			// Identifies the campaign; run k draws from AntRandom.forRun(seed, k)
 		int nRuns = 3000;			// Number of simulation runs to accumulate
+		Engine engine = Engine.STEPPED;	// How to run each simulation
+		int nThreads = 0;			// 0: one thread; otherwise see ParallelRunner
+		double targetWidth = 0.0;	// > 0: stop early once every 95% interval is this narrow
 
 		try {
 			if( args.length >= 1 ) {
@@ -44,13 +65,93 @@ public class ProceduralAnts {
 			if( args.length >= 5 ) {
 				nRuns = Integer.parseInt(args[4]);
 			}
+			if( args.length >= 6 ) {
+				engine = Engine.valueOf(args[5].toUpperCase().replace('-', '_'));
+			}
+			if( args.length >= 7 ) {
+				nThreads = Integer.parseInt(args[6]);
+			}
+			if( args.length >= 8 ) {
+				targetWidth = Double.parseDouble(args[7]);
+			}
 		} catch( Exception e ) {
 			System.out.format("Could not parse command line: %s\n", e);
-			System.out.println("Usage: ProceduralAnts [numberOfAnts] [stickLength] [antSpeed] [seed] [# runs]");
+			System.out.println("Usage: ProceduralAnts [numberOfAnts] [stickLength] [antSpeed] [seed] [# runs] [stepped|event-driven|pass-through|vectorized|exact|batched|kinetic] [# threads] [target interval width]");
 		}
 
 		int debugLevel = 0;
-		Random r = new Random(seed);
+		long startTime = System.nanoTime();
+		// With -Dants.store=directory the results are recorded in a ResultStore
+		ResultStore store = ResultStore.fromProperties();
+		// With -Dants.store.reuse=true as well, a campaign that is already in
+		// the store, with the same engine and number of runs and drawn with
+		// the same generator and sampler, is not run again. A campaign that
+		// runs to a target width has no fixed number of runs, so it always runs.
+		if( store != null && Boolean.getBoolean("ants.store.reuse") && targetWidth <= 0.0 ) {
+			List<ResultStore.Result> stored = store.latest(numberOfAnts, stickLength, antSpeed,
+					(long)seed, engine, (long)nRuns);
+			stored.removeIf(result -> !result.isCurrent());
+			if( !stored.isEmpty() ) {
+				ResultStore.Result result = stored.get(0);
+				System.out.format("\n >> The %d runs were stored at %s; the averages of the probabilities are:\n\n",
+						result.nRuns, Instant.ofEpochMilli(result.time));
+				for( int k=0; k<numberOfAnts; k++ ) {
+					System.out.format(" %2d.   %6.4f\n", k, result.probabilities[k]);
+				}
+				finish(null, null, result);
+				return;
+			}
+		}
+		AntRandom r = new AntRandom(seed);
+		ForkJoinPool pool = null;
+		if( nThreads > 0 ) {
+			pool = new ForkJoinPool(nThreads);
+		}
+
+		// With -Dants.checkpoint=file the campaign is saved every
+		// ants.checkpoint.every runs, and running it again continues from there.
+		Checkpoint checkpoint = null;
+		Path checkpointPath = null;
+		long checkpointEvery = Long.getLong("ants.checkpoint.every", 1000000);
+		boolean resuming = false;
+		if( System.getProperty("ants.checkpoint") != null ) {
+			checkpointPath = Path.of(System.getProperty("ants.checkpoint"));
+			checkpoint = Checkpoint.load(checkpointPath);
+			if( checkpoint == null ) {
+				checkpoint = new Checkpoint(numberOfAnts, stickLength, antSpeed, seed, nRuns, engine);
+			} else if( !checkpoint.matches(numberOfAnts, stickLength, antSpeed, seed, nRuns, engine) ) {
+				System.out.format("%s belongs to a different campaign\n", checkpointPath);
+				if( pool != null ) {
+					pool.shutdown();
+				}
+				return;
+			} else {
+				resuming = true;
+			}
+		}
+
+		if( targetWidth > 0.0 ) {
+			if( resuming && checkpoint.group > 0 ) {
+				// Only the probabilities of a finished set are kept, not its counts
+				System.out.format("%s belongs to a campaign that has finished all %d runs\n",
+						checkpointPath, nRuns);
+				if( pool != null ) {
+					pool.shutdown();
+				}
+				return;
+			}
+			OutcomeStatistics stats = runUntilConverged(numberOfAnts, stickLength, antSpeed,
+					seed, nRuns, engine, targetWidth, r, pool, checkpoint, checkpointPath,
+					checkpointEvery);
+			double[] probabilities = new double[numberOfAnts];
+			for( int k=0; k<numberOfAnts; k++ ) {
+				probabilities[k] = stats.getMean(k);
+			}
+			finish(store, pool, new ResultStore.Result(System.currentTimeMillis(), numberOfAnts,
+					stickLength, antSpeed, seed, engine, stats.getRunCount(),
+					System.nanoTime() - startTime, probabilities));
+			return;
+		}
 
 		// -------------------------------------------------------------------------
 		// Creating and capturing statistics
@@ -85,19 +186,41 @@ public class ProceduralAnts {
 		for( int i=0; i<numberOfAnts; i++ ) { 						// special
 			probabilityAccumulator[i]=0;							// special
 		}															// special
-		for( int j=0; j<nGroups; j++) {							// special
+		int firstGroup = 0;
+		if( resuming ) {
+			firstGroup = checkpoint.group;
+			System.arraycopy(checkpoint.probabilities, 0, probabilityAccumulator, 0, numberOfAnts);
+			System.out.format("Resuming from %s: set %d, %d runs done\n",
+					checkpointPath, checkpoint.group, checkpoint.completedRuns);
+		}
+
+		for( int j=firstGroup; j<nGroups; j++) {							// special
 
 			double[] velocityAccumulator = new double[numberOfAnts];
-			for( int i=0; i<numberOfAnts; i++ ) { 
-				velocityAccumulator[i]=0;
+			long[] counts = new long[numberOfAnts];
+			int runsDone = 0;
+			if( checkpoint != null && checkpoint.group == j ) {
+				runsDone = (int)checkpoint.completedRuns;
+				System.arraycopy(checkpoint.counts, 0, counts, 0, numberOfAnts);
 			}
 
-			for( int runIndex=0; runIndex<nSimulationsPerGroup; runIndex++ ) {
-				int[] vp = doRun(numberOfAnts, stickLength, antSpeed, 
-						debugLevel, r);
-				for( int i=0; i<numberOfAnts; i++ ) {
-					velocityAccumulator[i] += (double)vp[i];
+			while( runsDone < nSimulationsPerGroup ) {
+				int n = nSimulationsPerGroup - runsDone;
+				if( checkpoint != null ) {
+					n = (int)Math.min(n, checkpointEvery);
 				}
+				doRuns(numberOfAnts, stickLength, antSpeed, debugLevel, r, engine,
+						pool, seed, (long)j*nSimulationsPerGroup + runsDone, n, counts);
+				runsDone += n;
+				if( checkpoint != null ) {
+					checkpoint.group = j;
+					checkpoint.completedRuns = runsDone;
+					System.arraycopy(counts, 0, checkpoint.counts, 0, numberOfAnts);
+					checkpoint.save(checkpointPath);
+				}
+			}
+			for( int i=0; i<numberOfAnts; i++ ) {
+				velocityAccumulator[i] = (double)counts[i];
 			}
 			System.out.format("\nFinished %d runs with %d ants\n", nSimulationsPerGroup, numberOfAnts);
 			System.out.format("Printing the probability that an ant falls off the same end of the stick\nthat it faced initially\n");
@@ -111,6 +234,14 @@ public class ProceduralAnts {
 			for( int k=0; k<numberOfAnts; k++ ) {						// special
 				probabilityAccumulator[k] += velocityAccumulator[k]/nSimulationsPerGroup;	// special
 			}															// special
+			if( checkpoint != null ) {
+				// This set is done; the next one starts from scratch
+				checkpoint.group = j + 1;
+				checkpoint.completedRuns = 0;
+				Arrays.fill(checkpoint.counts, 0);
+				System.arraycopy(probabilityAccumulator, 0, checkpoint.probabilities, 0, numberOfAnts);
+				checkpoint.save(checkpointPath);
+			}
 
 		}															// special
 
@@ -120,6 +251,203 @@ public class ProceduralAnts {
 			System.out.format(" %2d.   %6.4f\n", 					// special
 					k, probabilityAccumulator[k]/nGroups);			// special
 		}
+		double[] probabilities = new double[numberOfAnts];
+		for( int k=0; k<numberOfAnts; k++ ) {
+			probabilities[k] = probabilityAccumulator[k]/nGroups;
+		}
+		finish(store, pool, new ResultStore.Result(System.currentTimeMillis(), numberOfAnts,
+				stickLength, antSpeed, seed, engine, (long)nGroups*nSimulationsPerGroup,
+				System.nanoTime() - startTime, probabilities));
+	}
+
+	/**
+	 * The end of every campaign, whether it ran a fixed number of runs or
+	 * until convergence, or was found in the store: record the result in
+	 * the store, if there is one, shut down the pool and write the metrics.
+	 */
+	private static void finish(ResultStore store, ForkJoinPool pool, ResultStore.Result result) {
+		if( store != null ) {
+			store.put(result);
+		}
+		if( pool != null ) {
+			pool.shutdown();
+		}
+		if( RunMetrics.ENABLED ) {
+			writeMetrics();
+		}
+	}
+
+	/**
+	 * Write the merged RunMetrics as JSON to <code>-Dants.metrics.file</code>,
+	 * or to standard output.
+	 */
+	static void writeMetrics() {
+		String fileName = System.getProperty("ants.metrics.file");
+		if( fileName == null ) {
+			System.out.println();
+			RunMetrics.summary().writeJson(System.out);
+			return;
+		}
+		try( PrintStream out = new PrintStream(fileName, "UTF-8") ) {
+			RunMetrics.summary().writeJson(out);
+		} catch( IOException e ) {
+			System.out.format("Could not write %s: %s\n", fileName, e);
+		}
+	}
+
+	/**
+	 * Do <code>nRuns</code> runs and add their outcomes to <code>counts</code>.
+	 * Run k draws from <code>AntRandom.forRun(seed, k)</code>, so the
+	 * outcomes are the same with or without a pool.
+	 *
+	 * @param numberOfAnts
+	 * @param stickLength
+	 * @param antSpeed
+	 * @param debugLevel
+	 * @param r is switched to the stream of each run, if pool is null
+	 * @param engine
+	 * @param pool may be null
+	 * @param seed
+	 * @param firstRun index of the first run
+	 * @param nRuns
+	 * @param counts per-ant count of "same side" outcomes
+	 */
+	static void doRuns(int numberOfAnts, double stickLength, double antSpeed,
+			int debugLevel, AntRandom r, Engine engine, ForkJoinPool pool,
+			long seed, long firstRun, int nRuns, long[] counts) {
+		if( pool != null ) {
+			long[] poolCounts = ParallelRunner.run(pool, numberOfAnts, stickLength, antSpeed,
+					seed, firstRun, nRuns, engine);
+			for( int i=0; i<numberOfAnts; i++ ) {
+				counts[i] += poolCounts[i];
+			}
+		} else if( engine == Engine.BATCHED ) {
+			BatchSimulation batch = new BatchSimulation(
+					Math.min(BatchSimulation.DEFAULT_CAPACITY, nRuns),
+					numberOfAnts, stickLength, antSpeed);
+			int runIndex = 0;
+			while( runIndex < nRuns ) {
+				batch.clear();
+				for( ; runIndex<nRuns && batch.size()<batch.capacity(); runIndex++ ) {
+					batch.addStick(r.setRun(seed, firstRun + runIndex));
+				}
+				batch.run();
+				batch.addSameSideCounts(counts);
+			}
+		} else {
+			for( int runIndex=0; runIndex<nRuns; runIndex++ ) {
+				int[] vp = doRun(numberOfAnts, stickLength, antSpeed,
+						debugLevel, r.setRun(seed, firstRun + runIndex), engine);
+				for( int i=0; i<numberOfAnts; i++ ) {
+					counts[i] += vp[i];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Do runs until the 95% Wilson interval of every ant's probability
+	 * is narrower than <code>targetWidth</code>, or <code>maxRuns</code>
+	 * runs are done, then print the probabilities with their intervals.
+	 * The intervals are checked every <code>CHECK_INTERVAL</code> runs.
+	 *
+	 * @param numberOfAnts
+	 * @param stickLength
+	 * @param antSpeed
+	 * @param seed identifies the campaign
+	 * @param maxRuns
+	 * @param engine
+	 * @param targetWidth
+	 * @param r is switched to the stream of each run, if pool is null
+	 * @param pool if not null, runs are done in parallel by ParallelRunner
+	 * @return the statistics of the runs done
+	 */
+	public static OutcomeStatistics runUntilConverged(int numberOfAnts, double stickLength,
+			double antSpeed, long seed, long maxRuns, Engine engine, double targetWidth,
+			AntRandom r, ForkJoinPool pool) {
+		return runUntilConverged(numberOfAnts, stickLength, antSpeed, seed, maxRuns, engine,
+				targetWidth, r, pool, null, null, 0);
+	}
+
+	/**
+	 * <code>runUntilConverged</code>, saved to a checkpoint at least every
+	 * <code>checkpointEvery</code> runs and at the end. The checkpoint holds
+	 * the counts of the runs done so far, as a single set; if it already
+	 * has some, the campaign continues from there. The statistics are
+	 * always computed from the total counts, so they do not depend on
+	 * where the campaign was interrupted, or on the number of threads.
+	 *
+	 * @param checkpoint may be null
+	 * @param checkpointPath
+	 * @param checkpointEvery
+	 */
+	public static OutcomeStatistics runUntilConverged(int numberOfAnts, double stickLength,
+			double antSpeed, long seed, long maxRuns, Engine engine, double targetWidth,
+			AntRandom r, ForkJoinPool pool, Checkpoint checkpoint, Path checkpointPath,
+			long checkpointEvery) {
+		OutcomeStatistics stats = new OutcomeStatistics(numberOfAnts);
+		long[] counts = new long[numberOfAnts];
+		if( checkpoint != null && checkpoint.completedRuns > 0 ) {
+			System.arraycopy(checkpoint.counts, 0, counts, 0, numberOfAnts);
+			stats.addCounts(checkpoint.completedRuns, counts);
+			System.out.format("Resuming from %s: %d runs done\n",
+					checkpointPath, checkpoint.completedRuns);
+		}
+		long savedRuns = stats.getRunCount();
+		System.out.format("\n*** Starting up to %d simulation runs, until every 95%% interval is narrower than %.4f ***\n",
+				maxRuns, targetWidth);
+		while( stats.getRunCount() < maxRuns
+				&& stats.getMaxWilsonWidth(OutcomeStatistics.Z95) >= targetWidth ) {
+			long runCount = stats.getRunCount();
+			int n = (int)Math.min(CHECK_INTERVAL, maxRuns - runCount);
+			doRuns(numberOfAnts, stickLength, antSpeed, 0, r, engine, pool,
+					seed, runCount, n, counts);
+			stats.reset();
+			stats.addCounts(runCount + n, counts);
+			if( checkpoint != null && stats.getRunCount() - savedRuns >= checkpointEvery ) {
+				saveConverging(checkpoint, checkpointPath, stats.getRunCount(), counts);
+				savedRuns = stats.getRunCount();
+			}
+		}
+		if( checkpoint != null && stats.getRunCount() != savedRuns ) {
+			saveConverging(checkpoint, checkpointPath, stats.getRunCount(), counts);
+		}
+
+		double width = stats.getMaxWilsonWidth(OutcomeStatistics.Z95);
+		System.out.format("\n%s after %d runs with %d ants; the widest interval is %.4f\n",
+				width < targetWidth ? "Converged" : "Stopped", stats.getRunCount(),
+				numberOfAnts, width);
+		System.out.format("Printing the probability that an ant falls off the same end of the stick\nthat it faced initially\n");
+		System.out.format("ant  probability  95%% interval\n");
+		for( int i=0; i<numberOfAnts; i++ ) {
+			System.out.format(" %2d  %6.4f       [%6.4f, %6.4f]\n", i, stats.getMean(i),
+					stats.getWilsonLower(i, OutcomeStatistics.Z95),
+					stats.getWilsonUpper(i, OutcomeStatistics.Z95));
+		}
+		return stats;
+	}
+
+	private static void saveConverging(Checkpoint checkpoint, Path checkpointPath,
+			long completedRuns, long[] counts) {
+		checkpoint.group = 0;
+		checkpoint.completedRuns = completedRuns;
+		System.arraycopy(counts, 0, checkpoint.counts, 0, counts.length);
+		checkpoint.save(checkpointPath);
+	}
+
+	// Runs between convergence checks in runUntilConverged
+	static final long CHECK_INTERVAL = 256;
+
+	/**
+	 * @param numberOfAnts
+	 * @param stickLength
+	 * @param antSpeed
+	 * @param debugLevel
+	 * @param r
+	 */
+	public static int[] doRun(int numberOfAnts, double stickLength,
+			double antSpeed, int debugLevel, RandomGenerator r) {
+		return doRun(numberOfAnts, stickLength, antSpeed, debugLevel, r, Engine.STEPPED);
 	}
 
 	/**
@@ -128,9 +456,34 @@ public class ProceduralAnts {
 	 * @param antSpeed
 	 * @param debugLevel
 	 * @param r
+	 * @param engine selects fixed time steps, event-driven simulation, pass-through solution,
+	 * vectorized fixed time steps or exact fixed time steps
 	 */
 	public static int[] doRun(int numberOfAnts, double stickLength,
-			double antSpeed, int debugLevel, Random r) {
+			double antSpeed, int debugLevel, RandomGenerator r, Engine engine) {
+		return doRun(numberOfAnts, stickLength, antSpeed, debugLevel, r, engine, null);
+	}
+
+	/**
+	 * Solve a run with PassThroughSolver instead of simulating it.
+	 *
+	 * @param numberOfAnts
+	 * @param stickLength
+	 * @param antSpeed
+	 * @param debugLevel
+	 * @param r
+	 * @param exitTimes if not null, receives the time at which each ant falls off
+	 */
+	public static int[] doPassThroughRun(int numberOfAnts, double stickLength,
+			double antSpeed, int debugLevel, RandomGenerator r, double[] exitTimes) {
+		return doRun(numberOfAnts, stickLength, antSpeed, debugLevel, r,
+				Engine.PASS_THROUGH, exitTimes);
+	}
+
+	private static int[] doRun(int numberOfAnts, double stickLength,
+			double antSpeed, int debugLevel, RandomGenerator r, Engine engine, double[] exitTimes) {
+
+		long startTime = RunMetrics.ENABLED ? System.nanoTime() : 0L;
 
 		// Create the ants
 		double[] antPositions = initializePositions(stickLength, numberOfAnts, r);
@@ -145,10 +498,30 @@ public class ProceduralAnts {
 		}
 
 		// Start the simulation
-		double timeStep = 0.5 * antSpeed ;
+		if( engine == Engine.PASS_THROUGH ) {
+			PassThroughSolver.solve(stickLength, antPositions, antVelocities, exitTimes);
+		} else if( engine == Engine.EVENT_DRIVEN ) {
+			EventSimulation.doSimulation(stickLength, debugLevel,
+					antPositions, antVelocities);
+		} else if( engine == Engine.VECTORIZED ) {
+			SteppingKernel.getInstance().doSimulation(0.5 * antSpeed, numberOfAnts,
+					stickLength, antSpeed, antPositions, antVelocities,
+					new double[numberOfAnts + 1]);
+		} else if( engine == Engine.EXACT ) {
+			ExactSimulation.doSimulation(stickLength, antSpeed, antPositions, antVelocities,
+					new long[numberOfAnts]);
+		} else if( engine == Engine.KINETIC ) {
+			KineticSimulation.doSimulation(stickLength, antPositions, antVelocities);
+		} else {
+			double timeStep = 0.5 * antSpeed ;
 
-		doSimulation(timeStep, numberOfAnts, stickLength, antSpeed,
-				debugLevel, antPositions, antVelocities);
+			doSimulation(timeStep, numberOfAnts, stickLength, antSpeed,
+					debugLevel, antPositions, antVelocities);
+		}
+
+		if( RunMetrics.ENABLED ) {
+			RunMetrics.current().runDone(System.nanoTime() - startTime);
+		}
 
 		// Report final positions and velocities
 		if( debugLevel >= 2 ) {
@@ -193,15 +566,20 @@ public class ProceduralAnts {
 		int iMax = numberOfAnts - 1;
 		double maxAntLifetime = stickLength / antSpeed ; // Maximum possible duration of simulation, in seconds
 
+		TrajectorySink sink = null;
 		if( debugLevel >= 3 ) {
-			System.out.format("\n    Time    Ant positions    iMin..iMax\n");
+			sink = TrajectorySink.create(TrajectorySink.kindFromProperties(),
+					numberOfAnts, stickLength, TextTrajectorySink.Style.PAIRS, 5, true);
 		}
 
+		long nSteps = 0;
+		long nCollisions = 0;
 		for( double simTime = 0.0; simTime < maxAntLifetime; simTime += timeStep ) {
 
-			if( debugLevel >= 3 ) {
-				printAntStep(numberOfAnts, iMin, iMax, antPositions, simTime);
+			if( sink != null ) {
+				printAntStep(sink, numberOfAnts, iMin, iMax, antPositions, simTime);
 			}
+			nSteps++;
 			for( int i=iMin; i<=iMax; i++ ) {
 				// Update this Ant's position
 				double newPosition = antPositions[i] + timeStep*antVelocities[i];
@@ -211,16 +589,24 @@ public class ProceduralAnts {
 				if( newPosition < 0.0 ) {
 					// This ant just fell off the left end of the stick.
 					iMin++;
+					if( RunMetrics.ENABLED ) {
+						RunMetrics.current().antFellOff(simTime + timeStep);
+					}
 					// continue;
 				} else if( newPosition > stickLength ) {
 					// This ant just fell off the right end of the stick.
 					iMax--;
+					if( RunMetrics.ENABLED ) {
+						RunMetrics.current().antFellOff(simTime + timeStep);
+					}
 					// continue;
 				} else if( i > iMin ) {
 					// There is an Ant to the left of this one;
 					// check if the two of them have just collided
 					// and reverse their directions if so.
-					justCollided( i-1, i, antPositions, antVelocities );
+					if( justCollided( i-1, i, antPositions, antVelocities ) ) {
+						nCollisions++;
+					}
 				}
 			}
 			// Are there any active ants left? If not, we're done.
@@ -228,34 +614,40 @@ public class ProceduralAnts {
 				break;
 			}
 		}
+		if( RunMetrics.ENABLED ) {
+			// Ants still on the stick when the steps ran out, such as one
+			// that has just reached an end, leave it at maxAntLifetime
+			for( int i=iMin; i<=iMax; i++ ) {
+				RunMetrics.current().antFellOff(maxAntLifetime);
+			}
+			RunMetrics.current().simulationDone(nSteps, nCollisions);
+		}
+		if( sink != null ) {
+			sink.close();
+		}
 	}
 
 	/**
+	 * @param sink receives the positions
 	 * @param numberOfAnts
 	 * @param iMin
 	 * @param iMax
 	 * @param antPositions
 	 * @param simTime
 	 */
-	public static void printAntStep(int numberOfAnts, int iMin, int iMax,
+	public static void printAntStep(TrajectorySink sink, int numberOfAnts, int iMin, int iMax,
 			double[] antPositions, double simTime) {
-		System.out.format(" %6.1f:  ", simTime);
-		for( int i=0; i<numberOfAnts; i++ ) {
-			if( i<iMin || i>iMax ) {
-				// Ants that dropped off the stick
-				System.out.format("   ----");
-			} else if( i<iMax
-					&& Math.abs(antPositions[i+1]-antPositions[i])<0.001 ) {
-				// Ants that collided
-				System.out.format("  %5.1f==%5.1f",
-						antPositions[i], antPositions[i+1]);
-				i++;
-			} else {
-				// Active Ants
-				System.out.format("  %5.1f", antPositions[i]);
-			}
+		sink.beginStep(simTime);
+		// Ants that dropped off the left end of the stick
+		sink.fallen(0, Math.min(iMin, numberOfAnts));
+		for( int i=iMin; i<=iMax; i++ ) {
+			// Active Ants, and whether they collided with the next one
+			sink.ant(i, antPositions[i], i<iMax
+					&& Math.abs(antPositions[i+1]-antPositions[i])<0.001);
 		}
-		System.out.format("  %2d..%2d\n", iMin, iMax);
+		// Ants that dropped off the right end of the stick
+		sink.fallen(Math.max(iMax+1, iMin), numberOfAnts);
+		sink.endStep(iMin, iMax);
 	}
 
 	/**
@@ -274,26 +666,18 @@ public class ProceduralAnts {
 	/**
 	 * Create an array of <code>numberOfAnts</code> ant positions,
 	 * where the positions are randomly distributed in the range 
-	 * <code>[0, stickLength)</code>,
+	 * <code>[0, stickLength]</code>,
 	 * the positions are restricted to whole numbers,
 	 * and each position must be unique.
+	 * The positions come out sorted (see PositionSampler).
 	 * 
 	 * @param stickLength in cm.
 	 * @param numberOfAnts
 	 * @return an array of ant positions
+	 * @throws IllegalArgumentException if there are more ants than whole-number positions
 	 */
-	public static double[] initializePositions(double stickLength, int numberOfAnts, Random r) {
-		// Initialize positions
-		Set<Double> uniquePositions = new TreeSet<Double>();
-		while( uniquePositions.size() < numberOfAnts ) {
-			uniquePositions.add( Math.rint(r.nextDouble()*stickLength) );
-		}
-		double[] retval = new double[numberOfAnts];
-		int i=0;
-		for( double z: uniquePositions ) {
-			retval[i++] = z;
-		}
-		return retval;
+	public static double[] initializePositions(double stickLength, int numberOfAnts, RandomGenerator r) {
+		return PositionSampler.forStick(stickLength, numberOfAnts).sample(r);
 	}
 	/**
 	 * Initialize the ant velocities
@@ -301,7 +685,7 @@ public class ProceduralAnts {
 	 * @param antSpeed in cm./sec.
 	 * @param antVelocities
 	 */
-	public static double[] initializeVelocities(double antSpeed, int numberOfAnts, Random r) {
+	public static double[] initializeVelocities(double antSpeed, int numberOfAnts, RandomGenerator r) {
 		// Initialize velocities
 		double[] retval = new double[numberOfAnts];
 		for( int i=0; i<numberOfAnts; i++) {
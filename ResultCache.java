@@ -0,0 +1,169 @@
+package org.avk.ants;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk cache of per-ant "same side" counts for batches of runs.
+ *
+ * Run k of a campaign is fully determined by the configuration, the
+ * campaign seed and k (see <code>AntRandom.forRun</code>), so the
+ * counts for runs <code>[firstRun, firstRun+nRuns)</code> never change
+ * once computed. Each configuration, seed and engine has its own text
+ * file in the cache directory, named after the generator and the
+ * <code>PositionSampler</code> version as well, so that counts drawn some
+ * other way are never mixed in. There is one line per batch:
+ * <pre>
+ *   firstRun nRuns count0 count1 ... crc
+ * </pre>
+ * where crc is the CRC32, in hex, of the text before it. Lines are only
+ * ever appended, so an interrupted sweep loses at most the batch it was
+ * writing: a line cut short anywhere, even inside its last count, fails
+ * its CRC and is ignored, and the next line written after it starts on a
+ * line of its own.
+ */
+public class ResultCache {
+
+	private final Path directory;
+	// Batches already loaded from disk, per file name and firstRun
+	private final Map<String, Map<Long, long[]>> loaded = new HashMap<String, Map<Long, long[]>>();
+	// Files that end in a partly written line
+	private final Set<String> unterminated = new HashSet<String>();
+
+	/**
+	 * @param directory is created if it does not exist
+	 */
+	public ResultCache(Path directory) {
+		this.directory = directory;
+		try {
+			Files.createDirectories(directory);
+		} catch( IOException e ) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * The counts of the batch of <code>nRuns</code> runs starting at
+	 * <code>firstRun</code>, or null if it has not been computed.
+	 */
+	public synchronized long[] get(int numberOfAnts, double stickLength, double antSpeed,
+			long seed, ProceduralAnts.Engine engine, long firstRun, long nRuns) {
+		long[] entry = batches(fileName(numberOfAnts, stickLength, antSpeed, seed, engine))
+				.get(firstRun);
+		if( entry == null || entry[0] != nRuns || entry.length != numberOfAnts + 1 ) {
+			return null;
+		}
+		long[] counts = new long[numberOfAnts];
+		System.arraycopy(entry, 1, counts, 0, numberOfAnts);
+		return counts;
+	}
+
+	/**
+	 * Record the counts of a batch.
+	 */
+	public synchronized void put(int numberOfAnts, double stickLength, double antSpeed,
+			long seed, ProceduralAnts.Engine engine, long firstRun, long nRuns, long[] counts) {
+		String name = fileName(numberOfAnts, stickLength, antSpeed, seed, engine);
+		Map<Long, long[]> batches = batches(name);
+		StringBuilder line = new StringBuilder();
+		line.append(firstRun).append(' ').append(nRuns);
+		long[] entry = new long[numberOfAnts + 1];
+		entry[0] = nRuns;
+		for( int i=0; i<numberOfAnts; i++ ) {
+			line.append(' ').append(counts[i]);
+			entry[i+1] = counts[i];
+		}
+		long crc = crc(line);
+		line.append(' ').append(Long.toHexString(crc)).append('\n');
+		if( unterminated.remove(name) ) {
+			// Don't append to the partly written line
+			line.insert(0, '\n');
+		}
+		try {
+			Files.writeString(directory.resolve(name), line, StandardCharsets.US_ASCII,
+					StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		} catch( IOException e ) {
+			throw new UncheckedIOException(e);
+		}
+		batches.put(firstRun, entry);
+	}
+
+	private static long crc(CharSequence text) {
+		CRC32 crc = new CRC32();
+		crc.update(text.toString().getBytes(StandardCharsets.US_ASCII));
+		return crc.getValue();
+	}
+
+	private Map<Long, long[]> batches(String name) {
+		Map<Long, long[]> batches = loaded.get(name);
+		if( batches != null ) {
+			return batches;
+		}
+		batches = new HashMap<Long, long[]>();
+		Path file = directory.resolve(name);
+		if( Files.exists(file) ) {
+			try( BufferedReader in = Files.newBufferedReader(file, StandardCharsets.US_ASCII) ) {
+				String line;
+				while( (line = in.readLine()) != null ) {
+					String text = line.trim();
+					int lastSpace = text.lastIndexOf(' ');
+					try {
+						if( lastSpace < 0 || Long.parseLong(text.substring(lastSpace + 1), 16)
+								!= crc(text.substring(0, lastSpace)) ) {
+							continue;
+						}
+						String[] fields = text.substring(0, lastSpace).split("\\s+");
+						long[] entry = new long[fields.length - 1];
+						for( int i=1; i<fields.length; i++ ) {
+							entry[i-1] = Long.parseLong(fields[i]);
+						}
+						batches.put(Long.parseLong(fields[0]), entry);
+					} catch( RuntimeException e ) {
+						// A partly written line; the batch will be recomputed
+					}
+				}
+			} catch( IOException e ) {
+				throw new UncheckedIOException(e);
+			}
+			if( !endsInNewline(file) ) {
+				unterminated.add(name);
+			}
+		}
+		loaded.put(name, batches);
+		return batches;
+	}
+
+	private static boolean endsInNewline(Path file) {
+		try( SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.READ) ) {
+			long size = channel.size();
+			if( size == 0 ) {
+				return true;
+			}
+			ByteBuffer last = ByteBuffer.allocate(1);
+			channel.position(size - 1);
+			channel.read(last);
+			return last.get(0) == '\n';
+		} catch( IOException e ) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	static String fileName(int numberOfAnts, double stickLength, double antSpeed,
+			long seed, ProceduralAnts.Engine engine) {
+		return String.format("n%d_L%s_v%s_s%d_%s_%s_%s.txt", numberOfAnts,
+				Double.toString(stickLength), Double.toString(antSpeed), seed,
+				engine.name().toLowerCase(), AntRandom.NAME, PositionSampler.NAME);
+	}
+}
@@ -0,0 +1,498 @@
+package org.avk.ants;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * File-backed store of the results of finished <code>ProceduralAnts</code>
+ * campaigns, so that they can be looked up later without rerunning them.
+ * <code>ProceduralAnts</code> records each campaign here when it is run
+ * with <code>-Dants.store=directory</code>; <code>main</code> queries it.
+ *
+ * The store is a directory of append-only segment files,
+ * <code>segment-000000.txt</code>, <code>segment-000001.txt</code>, ...,
+ * with one line per campaign:
+ * <pre>
+ *   time numberOfAnts stickLength antSpeed seed engine nRuns elapsedNanos generator sampler p0 p1 ...
+ * </pre>
+ * where time is in milliseconds since 1970, generator and sampler are
+ * the <code>AntRandom.NAME</code> and <code>PositionSampler.NAME</code>
+ * the runs were drawn with, and p0 ... are the per-ant probabilities.
+ * Records from before the names were kept have neither; they are read
+ * with both names "-", which matches no generator or sampler. A segment that has reached
+ * <code>-Dants.store.segment.size</code> bytes (default 1 MB) is closed and
+ * the next record starts a new one.
+ *
+ * <code>index.txt</code> has a line for every record, giving its key and
+ * where to find it:
+ * <pre>
+ *   numberOfAnts stickLength antSpeed seed engine nRuns generator sampler segment offset length
+ * </pre>
+ * The key is the whole campaign: the configuration, the engine, the
+ * number of runs and the generator and sampler, so campaigns that differ
+ * in any of them are kept apart, and a seed's runs under one generator
+ * are never taken for its runs under another. The index is read into
+ * memory when the store is opened, so a query reads only the records it
+ * returns. Index lines with fewer fields, from before those were part of
+ * the key, are skipped, and their records are indexed again.
+ *
+ * A record is written to its segment before it is indexed; records that
+ * are in a segment but not in the index, because the JVM died in between
+ * or the index was deleted, are indexed when the store is next opened. A
+ * line that does not parse is ignored, and a segment that ends in a
+ * partly written line gets no more records. Only one process should
+ * write to a store at a time.
+ */
+public class ResultStore {
+
+	static final String INDEX = "index.txt";
+
+	private final Path directory;
+	private final long segmentSize;
+	// Where the records of each campaign are, oldest first
+	private final Map<Key, List<Location>> index = new TreeMap<Key, List<Location>>();
+	private int segment;
+	private long segmentLength;
+
+	/**
+	 * A finished campaign
+	 */
+	public static class Result {
+		public final long time;
+		public final int numberOfAnts;
+		public final double stickLength;
+		public final double antSpeed;
+		public final long seed;
+		public final ProceduralAnts.Engine engine;
+		public final long nRuns;
+		public final long elapsedNanos;
+		public final String generator;
+		public final String sampler;
+		public final double[] probabilities;
+
+		/**
+		 * A campaign drawn with this build's generator and sampler
+		 */
+		public Result(long time, int numberOfAnts, double stickLength, double antSpeed, long seed,
+				ProceduralAnts.Engine engine, long nRuns, long elapsedNanos, double[] probabilities) {
+			this(time, numberOfAnts, stickLength, antSpeed, seed, engine, nRuns, elapsedNanos,
+					AntRandom.NAME, PositionSampler.NAME, probabilities);
+		}
+
+		public Result(long time, int numberOfAnts, double stickLength, double antSpeed, long seed,
+				ProceduralAnts.Engine engine, long nRuns, long elapsedNanos, String generator,
+				String sampler, double[] probabilities) {
+			this.time = time;
+			this.numberOfAnts = numberOfAnts;
+			this.stickLength = stickLength;
+			this.antSpeed = antSpeed;
+			this.seed = seed;
+			this.engine = engine;
+			this.nRuns = nRuns;
+			this.elapsedNanos = elapsedNanos;
+			this.generator = generator;
+			this.sampler = sampler;
+			this.probabilities = probabilities;
+		}
+
+		/**
+		 * Were these runs drawn the way this build draws them?
+		 */
+		public boolean isCurrent() {
+			return generator.equals(AntRandom.NAME) && sampler.equals(PositionSampler.NAME);
+		}
+
+		Key key() {
+			return new Key(numberOfAnts, stickLength, antSpeed, seed, engine, nRuns,
+					generator, sampler);
+		}
+
+		String toLine() {
+			StringBuilder line = new StringBuilder();
+			line.append(time).append(' ').append(numberOfAnts)
+				.append(' ').append(stickLength).append(' ').append(antSpeed)
+				.append(' ').append(seed)
+				.append(' ').append(engine.name().toLowerCase().replace('_', '-'))
+				.append(' ').append(nRuns).append(' ').append(elapsedNanos)
+				.append(' ').append(generator).append(' ').append(sampler);
+			for( double p: probabilities ) {
+				line.append(' ').append(p);
+			}
+			return line.append('\n').toString();
+		}
+
+		/**
+		 * @throws IllegalArgumentException if the line is not a complete record
+		 */
+		static Result parse(String line) {
+			String[] fields = line.trim().split("\\s+");
+			if( fields.length < 8 ) {
+				throw new IllegalArgumentException("Not a result: " + line);
+			}
+			int numberOfAnts = Integer.parseInt(fields[1]);
+			// Older records have no generator and sampler names
+			int first;
+			if( fields.length == 10 + numberOfAnts ) {
+				first = 10;
+			} else if( fields.length == 8 + numberOfAnts ) {
+				first = 8;
+			} else {
+				throw new IllegalArgumentException("Not a result: " + line);
+			}
+			double[] probabilities = new double[numberOfAnts];
+			for( int i=0; i<numberOfAnts; i++ ) {
+				probabilities[i] = Double.parseDouble(fields[first+i]);
+			}
+			return new Result(Long.parseLong(fields[0]), numberOfAnts,
+					Double.parseDouble(fields[2]), Double.parseDouble(fields[3]),
+					Long.parseLong(fields[4]),
+					ProceduralAnts.Engine.valueOf(fields[5].toUpperCase().replace('-', '_')),
+					Long.parseLong(fields[6]), Long.parseLong(fields[7]),
+					first == 10 ? fields[8] : "-", first == 10 ? fields[9] : "-", probabilities);
+		}
+	}
+
+	/**
+	 * What the index is keyed by; campaigns sort by number of ants,
+	 * stick length, speed, seed, engine, number of runs, generator and
+	 * sampler.
+	 */
+	static class Key implements Comparable<Key> {
+		final int numberOfAnts;
+		final double stickLength;
+		final double antSpeed;
+		final long seed;
+		final ProceduralAnts.Engine engine;
+		final long nRuns;
+		final String generator;
+		final String sampler;
+
+		Key(int numberOfAnts, double stickLength, double antSpeed, long seed,
+				ProceduralAnts.Engine engine, long nRuns, String generator, String sampler) {
+			this.numberOfAnts = numberOfAnts;
+			this.stickLength = stickLength;
+			this.antSpeed = antSpeed;
+			this.seed = seed;
+			this.engine = engine;
+			this.nRuns = nRuns;
+			this.generator = generator;
+			this.sampler = sampler;
+		}
+
+		public int compareTo(Key other) {
+			int c = Integer.compare(numberOfAnts, other.numberOfAnts);
+			if( c == 0 ) {
+				c = Double.compare(stickLength, other.stickLength);
+			}
+			if( c == 0 ) {
+				c = Double.compare(antSpeed, other.antSpeed);
+			}
+			if( c == 0 ) {
+				c = Long.compare(seed, other.seed);
+			}
+			if( c == 0 ) {
+				c = engine.compareTo(other.engine);
+			}
+			if( c == 0 ) {
+				c = Long.compare(nRuns, other.nRuns);
+			}
+			if( c == 0 ) {
+				c = generator.compareTo(other.generator);
+			}
+			return c != 0 ? c : sampler.compareTo(other.sampler);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key && compareTo((Key)o) == 0;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(31L * Double.hashCode(stickLength) + Double.hashCode(antSpeed)
+					+ 17L * numberOfAnts + seed + 13L * engine.ordinal() + 7L * nRuns)
+					+ 5 * generator.hashCode() + sampler.hashCode();
+		}
+
+		/**
+		 * Does this key match the query? Null fields match anything.
+		 */
+		boolean matches(Integer numberOfAnts, Double stickLength, Double antSpeed, Long seed,
+				ProceduralAnts.Engine engine, Long nRuns) {
+			return (numberOfAnts == null || numberOfAnts == this.numberOfAnts)
+					&& (stickLength == null || Double.compare(stickLength, this.stickLength) == 0)
+					&& (antSpeed == null || Double.compare(antSpeed, this.antSpeed) == 0)
+					&& (seed == null || seed == this.seed)
+					&& (engine == null || engine == this.engine)
+					&& (nRuns == null || nRuns == this.nRuns);
+		}
+	}
+
+	// A record in a segment file
+	private static class Location {
+		final int segment;
+		final long offset;
+		final int length;
+
+		Location(int segment, long offset, int length) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * The store in <code>-Dants.store</code>, or null if it is not set
+	 */
+	public static ResultStore fromProperties() {
+		String directory = System.getProperty("ants.store");
+		return directory == null ? null : new ResultStore(Path.of(directory));
+	}
+
+	/**
+	 * Open a store, indexing any records the index is missing.
+	 *
+	 * @param directory is created if it does not exist
+	 */
+	public ResultStore(Path directory) {
+		this.directory = directory;
+		this.segmentSize = Long.getLong("ants.store.segment.size", 1 << 20);
+		try {
+			Files.createDirectories(directory);
+			// How far each segment has been indexed
+			Map<Integer, Long> indexedLength = readIndex();
+			segment = 0;
+			segmentLength = 0;
+			boolean lastIsComplete = true;
+			while( Files.exists(segmentPath(segment)) ) {
+				Long from = indexedLength.get(segment);
+				lastIsComplete = indexTail(segment, from == null ? 0 : from);
+				segmentLength = Files.size(segmentPath(segment));
+				segment++;
+			}
+			if( segment > 0 && lastIsComplete && segmentLength < segmentSize ) {
+				// Keep appending to the last segment
+				segment--;
+			} else {
+				segmentLength = 0;
+			}
+		} catch( IOException e ) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private Map<Integer, Long> readIndex() throws IOException {
+		Map<Integer, Long> indexedLength = new TreeMap<Integer, Long>();
+		Path file = directory.resolve(INDEX);
+		if( !Files.exists(file) ) {
+			return indexedLength;
+		}
+		try( BufferedReader in = Files.newBufferedReader(file, StandardCharsets.US_ASCII) ) {
+			String line;
+			while( (line = in.readLine()) != null ) {
+				String[] fields = line.trim().split("\\s+");
+				try {
+					if( fields.length != 11 ) {
+						throw new IllegalArgumentException("Not an index entry: " + line);
+					}
+					Key key = new Key(Integer.parseInt(fields[0]), Double.parseDouble(fields[1]),
+							Double.parseDouble(fields[2]), Long.parseLong(fields[3]),
+							ProceduralAnts.Engine.valueOf(fields[4].toUpperCase().replace('-', '_')),
+							Long.parseLong(fields[5]), fields[6], fields[7]);
+					Location location = new Location(Integer.parseInt(fields[8]),
+							Long.parseLong(fields[9]), Integer.parseInt(fields[10]));
+					index.computeIfAbsent(key, k -> new ArrayList<Location>()).add(location);
+					indexedLength.merge(location.segment, location.offset + location.length, Math::max);
+				} catch( RuntimeException e ) {
+					// A partly written or old-style line; the record is indexed again from its segment
+				}
+			}
+		}
+		return indexedLength;
+	}
+
+	/**
+	 * Index the records of a segment from <code>from</code> on.
+	 *
+	 * @return whether the segment ends in a complete line
+	 */
+	private boolean indexTail(int segment, long from) throws IOException {
+		byte[] bytes = Files.readAllBytes(segmentPath(segment));
+		int start = (int)Math.min(from, bytes.length);
+		for( int end=start; end<bytes.length; end++ ) {
+			if( bytes[end] != '\n' ) {
+				continue;
+			}
+			String line = new String(bytes, start, end - start, StandardCharsets.US_ASCII);
+			try {
+				addToIndex(Result.parse(line).key(), new Location(segment, start, end + 1 - start));
+			} catch( RuntimeException e ) {
+				// Not a record; skip it
+			}
+			start = end + 1;
+		}
+		return start == bytes.length;
+	}
+
+	private void addToIndex(Key key, Location location) throws IOException {
+		String line = String.format("%d %s %s %d %s %d %s %s %d %d %d\n", key.numberOfAnts,
+				Double.toString(key.stickLength), Double.toString(key.antSpeed), key.seed,
+				key.engine.name().toLowerCase().replace('_', '-'), key.nRuns,
+				key.generator, key.sampler,
+				location.segment, location.offset, location.length);
+		Files.writeString(directory.resolve(INDEX), line, StandardCharsets.US_ASCII,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		index.computeIfAbsent(key, k -> new ArrayList<Location>()).add(location);
+	}
+
+	private Path segmentPath(int segment) {
+		return directory.resolve(String.format("segment-%06d.txt", segment));
+	}
+
+	/**
+	 * Record a finished campaign.
+	 */
+	public synchronized void put(Result result) {
+		byte[] line = result.toLine().getBytes(StandardCharsets.US_ASCII);
+		try {
+			if( segmentLength >= segmentSize ) {
+				segment++;
+				segmentLength = 0;
+			}
+			Files.write(segmentPath(segment), line,
+					StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			Location location = new Location(segment, segmentLength, line.length);
+			segmentLength += line.length;
+			addToIndex(result.key(), location);
+		} catch( IOException e ) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * All results of the campaigns that match, by campaign and then
+	 * oldest first. Null arguments match anything.
+	 */
+	public synchronized List<Result> find(Integer numberOfAnts, Double stickLength,
+			Double antSpeed, Long seed, ProceduralAnts.Engine engine, Long nRuns) {
+		List<Result> results = new ArrayList<Result>();
+		for( Map.Entry<Key, List<Location>> entry: index.entrySet() ) {
+			if( entry.getKey().matches(numberOfAnts, stickLength, antSpeed, seed, engine, nRuns) ) {
+				for( Location location: entry.getValue() ) {
+					results.add(read(location));
+				}
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * The most recent result of every campaign that matches.
+	 * Null arguments match anything.
+	 */
+	public synchronized List<Result> latest(Integer numberOfAnts, Double stickLength,
+			Double antSpeed, Long seed, ProceduralAnts.Engine engine, Long nRuns) {
+		List<Result> results = new ArrayList<Result>();
+		for( Map.Entry<Key, List<Location>> entry: index.entrySet() ) {
+			if( entry.getKey().matches(numberOfAnts, stickLength, antSpeed, seed, engine, nRuns) ) {
+				List<Location> locations = entry.getValue();
+				results.add(read(locations.get(locations.size() - 1)));
+			}
+		}
+		return results;
+	}
+
+	private Result read(Location location) {
+		ByteBuffer buffer = ByteBuffer.allocate(location.length);
+		try( FileChannel channel = FileChannel.open(segmentPath(location.segment), StandardOpenOption.READ) ) {
+			while( buffer.hasRemaining() ) {
+				if( channel.read(buffer, location.offset + buffer.position()) < 0 ) {
+					throw new IOException(String.format("%s is shorter than its index says",
+							segmentPath(location.segment)));
+				}
+			}
+		} catch( IOException e ) {
+			throw new UncheckedIOException(e);
+		}
+		return Result.parse(new String(buffer.array(), StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * Query the store in <code>-Dants.store</code> (default ants-results).
+	 * "list" prints every result of the campaigns that match, "latest"
+	 * only the most recent one of each; a missing argument or "-" matches
+	 * anything. For example, <code>list 7</code> prints all results with 7
+	 * ants, and <code>latest 7 100 1 2177 stepped 3000</code> the latest
+	 * 3000-run STEPPED campaign of that configuration.
+	 *
+	 * @param args list|latest [numberOfAnts] [stickLength] [antSpeed] [seed] [engine] [# runs]
+	 */
+	public static void main(String[] args) {
+		String usage = "Usage: ResultStore list|latest [numberOfAnts] [stickLength] [antSpeed] [seed] [engine] [# runs]";
+		if( args.length < 1 || !(args[0].equals("list") || args[0].equals("latest")) ) {
+			System.out.println(usage);
+			return;
+		}
+		Integer numberOfAnts = null;
+		Double stickLength = null;
+		Double antSpeed = null;
+		Long seed = null;
+		ProceduralAnts.Engine engine = null;
+		Long nRuns = null;
+		try {
+			if( args.length >= 2 && !args[1].equals("-") ) {
+				numberOfAnts = Integer.parseInt(args[1]);
+			}
+			if( args.length >= 3 && !args[2].equals("-") ) {
+				stickLength = Double.parseDouble(args[2]);
+			}
+			if( args.length >= 4 && !args[3].equals("-") ) {
+				antSpeed = Double.parseDouble(args[3]);
+			}
+			if( args.length >= 5 && !args[4].equals("-") ) {
+				seed = Long.parseLong(args[4]);
+			}
+			if( args.length >= 6 && !args[5].equals("-") ) {
+				engine = ProceduralAnts.Engine.valueOf(args[5].toUpperCase().replace('-', '_'));
+			}
+			if( args.length >= 7 && !args[6].equals("-") ) {
+				nRuns = Long.parseLong(args[6]);
+			}
+		} catch( IllegalArgumentException e ) {
+			System.out.format("Could not parse command line: %s\n", e);
+			System.out.println(usage);
+			return;
+		}
+
+		ResultStore store = new ResultStore(Path.of(System.getProperty("ants.store", "ants-results")));
+		List<Result> results = args[0].equals("list")
+				? store.find(numberOfAnts, stickLength, antSpeed, seed, engine, nRuns)
+				: store.latest(numberOfAnts, stickLength, antSpeed, seed, engine, nRuns);
+		if( results.isEmpty() ) {
+			System.out.println("No results");
+		}
+		for( Result result: results ) {
+			System.out.format("\n%s  %d ants on a %.1f cm. stick at %.1f cm./sec., seed %d\n",
+					Instant.ofEpochMilli(result.time), result.numberOfAnts, result.stickLength,
+					result.antSpeed, result.seed);
+			System.out.format("%d runs, %s, %.3f sec., drawn with %s and %s\n", result.nRuns,
+					result.engine.name().toLowerCase().replace('_', '-'), result.elapsedNanos / 1e9,
+					result.generator, result.sampler);
+			for( int k=0; k<result.numberOfAnts; k++ ) {
+				System.out.format(" %2d.   %6.4f\n", k, result.probabilities[k]);
+			}
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package org.avk.ants;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Counters for what happens inside the simulations: time steps (or
+ * events), collisions and fall-offs per run, how long each ant stayed on
+ * the stick, and the wall-clock time of each run.
+ *
+ * Instrumentation is switched on with <code>-Dants.metrics=true</code>.
+ * <code>ENABLED</code> is a static final, so when it is off the JIT drops
+ * every <code>if( RunMetrics.ENABLED )</code> block and the simulators run
+ * exactly as before.
+ *
+ * Each thread records into its own <code>RunMetrics</code>, with no
+ * synchronization; <code>summary</code> merges the metrics of all threads
+ * at the end. Every run is also committed as an <code>AntRunEvent</code>,
+ * which costs almost nothing unless a JFR recording has that event enabled.
+ */
+public class RunMetrics {
+
+	public static final boolean ENABLED = Boolean.getBoolean("ants.metrics");
+
+	private static final Queue<RunMetrics> allThreads = new ConcurrentLinkedQueue<RunMetrics>();
+	private static final ThreadLocal<RunMetrics> perThread = new ThreadLocal<RunMetrics>() {
+		@Override
+		protected RunMetrics initialValue() {
+			RunMetrics metrics = new RunMetrics();
+			allThreads.add(metrics);
+			return metrics;
+		}
+	};
+
+	final Histogram stepsPerRun = new Histogram();
+	final Histogram collisionsPerRun = new Histogram();
+	final Histogram antLifetime = new Histogram();
+	final Histogram nanosPerRun = new Histogram();
+
+	// The run in progress
+	private long steps;
+	private long collisions;
+	private double lastLifetime;
+
+	/**
+	 * The metrics of the calling thread
+	 */
+	public static RunMetrics current() {
+		return perThread.get();
+	}
+
+	/**
+	 * An ant fell off the stick at <code>simTime</code>
+	 */
+	public void antFellOff(double simTime) {
+		antLifetime.add(simTime);
+		lastLifetime = Math.max(lastLifetime, simTime);
+	}
+
+	/**
+	 * A simulation has finished
+	 *
+	 * @param nSteps time steps, or events for the event-driven engines
+	 * @param nCollisions
+	 */
+	public void simulationDone(long nSteps, long nCollisions) {
+		steps += nSteps;
+		collisions += nCollisions;
+	}
+
+	/**
+	 * A run, including the placement of the ants, took <code>nanos</code>
+	 */
+	public void runDone(long nanos) {
+		stepsPerRun.add(steps);
+		collisionsPerRun.add(collisions);
+		nanosPerRun.add(nanos);
+		AntRunEvent event = new AntRunEvent();
+		if( event.isEnabled() ) {
+			event.steps = steps;
+			event.collisions = collisions;
+			event.lastLifetime = lastLifetime;
+			event.nanos = nanos;
+			event.commit();
+		}
+		steps = 0;
+		collisions = 0;
+		lastLifetime = 0.0;
+	}
+
+	/**
+	 * The metrics of all threads so far, merged
+	 */
+	public static RunMetrics summary() {
+		RunMetrics total = new RunMetrics();
+		for( RunMetrics metrics: allThreads ) {
+			total.stepsPerRun.merge(metrics.stepsPerRun);
+			total.collisionsPerRun.merge(metrics.collisionsPerRun);
+			total.antLifetime.merge(metrics.antLifetime);
+			total.nanosPerRun.merge(metrics.nanosPerRun);
+		}
+		return total;
+	}
+
+	/**
+	 * Write the metrics as a JSON object.
+	 */
+	public void writeJson(PrintStream out) {
+		out.format("{\n  \"runs\": %d,\n", nanosPerRun.count);
+		out.format("  \"stepsPerRun\": %s,\n", stepsPerRun.toJson());
+		out.format("  \"collisionsPerRun\": %s,\n", collisionsPerRun.toJson());
+		out.format("  \"antLifetimeSeconds\": %s,\n", antLifetime.toJson());
+		out.format("  \"nanosPerRun\": %s\n}\n", nanosPerRun.toJson());
+	}
+
+	/**
+	 * Count, sum, minimum and maximum of a series of values, with a count
+	 * per power of two: bucket 0 holds [0, 1), bucket k holds [2^(k-1), 2^k).
+	 */
+	static class Histogram {
+		final long[] buckets = new long[64];
+		long count;
+		double sum;
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+
+		void add(double value) {
+			int bucket = value < 1.0 ? 0 : Math.min(Math.getExponent(value) + 1, 63);
+			buckets[bucket]++;
+			count++;
+			sum += value;
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+
+		void merge(Histogram other) {
+			for( int k=0; k<buckets.length; k++ ) {
+				buckets[k] += other.buckets[k];
+			}
+			count += other.count;
+			sum += other.sum;
+			min = Math.min(min, other.min);
+			max = Math.max(max, other.max);
+		}
+
+		String toJson() {
+			if( count == 0 ) {
+				return "{\"count\": 0}";
+			}
+			StringBuilder b = new StringBuilder();
+			b.append(String.format(Locale.ROOT,
+					"{\"count\": %d, \"mean\": %.6g, \"min\": %.6g, \"max\": %.6g, \"buckets\": [",
+					count, sum / count, min, max));
+			boolean first = true;
+			for( int k=0; k<buckets.length; k++ ) {
+				if( buckets[k] == 0 ) {
+					continue;
+				}
+				double lo = k == 0 ? 0.0 : Math.scalb(1.0, k - 1);
+				double hi = Math.scalb(1.0, k);
+				b.append(first ? "" : ", ");
+				b.append(String.format(Locale.ROOT, "{\"from\": %.0f, \"to\": %.0f, \"count\": %d}",
+						lo, hi, buckets[k]));
+				first = false;
+			}
+			return b.append("]}").toString();
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package org.avk.ants;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A worker process for <code>DistributedRunner</code>: connects to the
+ * coordinator, does the ranges of runs it is handed with a
+ * <code>ParallelRunner</code> of its own, and sends back the counts of
+ * each range, until it is told to quit or the coordinator closes the
+ * connection. See <code>DistributedRunner</code>
+ * for the protocol.
+ */
+public class RunWorker {
+
+	/**
+	 * @param args host port [# threads]
+	 */
+	public static void main(String[] args) throws IOException {
+		if( args.length < 2 ) {
+			System.out.println("Usage: RunWorker host port [# threads]");
+			return;
+		}
+		String host = args[0];
+		int port = Integer.parseInt(args[1]);
+		int nThreads = args.length >= 3 ? Integer.parseInt(args[2])
+				: Runtime.getRuntime().availableProcessors();
+
+		Socket connection = new Socket(host, port);
+		ForkJoinPool pool = new ForkJoinPool(nThreads);
+		try( Socket socket = connection;
+				DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())) ) {
+			socket.setTcpNoDelay(true);
+			out.writeInt(DistributedRunner.MAGIC);
+			out.flush();
+			int numberOfAnts = in.readInt();
+			double stickLength = in.readDouble();
+			double antSpeed = in.readDouble();
+			long seed = in.readLong();
+			ProceduralAnts.Engine engine = ProceduralAnts.Engine.values()[in.readInt()];
+
+			while( in.readByte() == DistributedRunner.RANGE ) {
+				long from = in.readLong();
+				long to = in.readLong();
+				long[] counts = ParallelRunner.run(pool, numberOfAnts, stickLength, antSpeed,
+						seed, from, to - from, engine);
+				out.writeByte(DistributedRunner.DONE);
+				out.writeLong(from);
+				out.writeLong(to);
+				for( long c: counts ) {
+					out.writeLong(c);
+				}
+				out.flush();
+			}
+		} catch( EOFException | SocketException e ) {
+			// The coordinator has gone away, or dropped a range that another
+			// worker finished first
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
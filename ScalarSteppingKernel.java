@@ -0,0 +1,79 @@
+package org.avk.ants;
+
+/**
+ * Plain loops over the arrays, for JVMs without the Vector API.
+ * Without SIMD the separate passes only add memory traffic, so a whole
+ * simulation uses the single loop of <code>ProceduralAnts.doSimulation</code>.
+ */
+public class ScalarSteppingKernel extends SteppingKernel {
+
+	public String getName() {
+		return "scalar";
+	}
+
+	@Override
+	public void doSimulation(double timeStep, int numberOfAnts, double stickLength,
+			double antSpeed, double[] antPositions, double[] antVelocities, double[] hit) {
+		ProceduralAnts.doSimulation(timeStep, numberOfAnts, stickLength, antSpeed,
+				0, antPositions, antVelocities);
+	}
+
+	/**
+	 * A plain moving loop, which the JIT vectorizes by itself, then the
+	 * collisions row by row, as <code>ProceduralAnts.doSimulation</code>
+	 * checks them ant by ant. Collisions are rare, so the branch is
+	 * almost never taken and costs next to nothing.
+	 */
+	@Override
+	public void stepBatch(double timeStep, double[] x, double[] v, double[] hit,
+			int numberOfAnts, int nSticks, int stride, double stickLength) {
+		for( int i=0; i<numberOfAnts; i++ ) {
+			moveAll(timeStep, x, v, i*stride, i*stride + nSticks - 1);
+		}
+		for( int i=1; i<numberOfAnts; i++ ) {
+			for( int j=i*stride; j<i*stride+nSticks; j++ ) {
+				if( Math.abs(x[j] - x[j-stride]) < Ant.epsX && v[j] != v[j-stride]
+						&& x[j-stride] >= 0.0 && x[j] <= stickLength ) {
+					v[j] = -v[j];
+					v[j-stride] = -v[j-stride];
+				}
+			}
+		}
+	}
+
+	public void moveAll(double timeStep, double[] x, double[] v, int from, int to) {
+		for( int i=from; i<=to; i++ ) {
+			x[i] = x[i] + timeStep*v[i];
+		}
+	}
+
+	public void markCollisions(double[] x, double[] v, double[] hit, int from, int to) {
+		for( int i=from; i<=to; i++ ) {
+			boolean touching = Math.abs(x[i] - x[i-1]) < Ant.epsX;
+			boolean approaching = v[i] != v[i-1];
+			hit[i] = (touching & approaching) ? 1.0 : 0.0;
+		}
+	}
+
+	public void applyCollisions(double[] v, double[] hit, int from, int to) {
+		for( int i=from; i<=to; i++ ) {
+			v[i] = (hit[i] + hit[i+1] > 0.0) ? -v[i] : v[i];
+		}
+	}
+
+	public void markCollisions(double[] x, double[] v, double[] hit, int from, int to,
+			int stride, double stickLength) {
+		for( int k=from; k<=to; k++ ) {
+			boolean touching = Math.abs(x[k] - x[k-stride]) < Ant.epsX;
+			boolean approaching = v[k] != v[k-stride];
+			boolean onStick = x[k-stride] >= 0.0 & x[k] <= stickLength;
+			hit[k] = (touching & approaching & onStick) ? 1.0 : 0.0;
+		}
+	}
+
+	public void applyCollisions(double[] v, double[] hit, int from, int to, int stride) {
+		for( int k=from; k<=to; k++ ) {
+			v[k] = (hit[k] + hit[k+stride] > 0.0) ? -v[k] : v[k];
+		}
+	}
+}
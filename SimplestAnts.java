@@ -28,9 +28,10 @@ public class SimplestAnts {
 		double[] antPositions = new double[numberOfAnts];
 		double[] antVelocities = new double[numberOfAnts];
 		// Initialize positions and velocities
+		AntRandom r = new AntRandom(31103);
 		for( int i=iMin; i<=iMax; i++) {
-			antPositions[i] = Math.rint(Math.random() * stickLength);
-			if( Math.random() < 0.5) {
+			antPositions[i] = Math.rint(r.nextDouble() * stickLength);
+			if( r.nextDouble() < 0.5) {
 				antVelocities[i] = -antSpeed;
 			} else {
 				antVelocities[i] = antSpeed;
@@ -48,25 +49,20 @@ public class SimplestAnts {
 		
 		// Start the simulation
 		double timeStep = 0.5 ;
-		System.out.format("\n    Time    Ant positions");
+		TrajectorySink sink = TrajectorySink.create(TrajectorySink.kindFromProperties(),
+				numberOfAnts, stickLength, TextTrajectorySink.Style.PAIRS, 4, false);
 		for( double simTime = 0.0; simTime < runLength; simTime += timeStep ) {
-			System.out.format("\n %6.1f:  ", simTime);
-			for( int i=0; i<numberOfAnts; i++ ) {
-				if( i<iMin || i>iMax ) {
-					// Ants that dropped off the stick
-					System.out.format("  ----");
-				} else if( i<iMax
-						&& Math.abs(antPositions[i+1]-antPositions[i])<0.001 ) {
-					// Ants that collided
-					System.out.format("  %4.1f==%4.1f",
-							antPositions[i], antPositions[i+1]);
-					i++;
-				} else {
-					// Active Ants
-					System.out.format("  %4.1f", antPositions[i]);
-				}
-				
+			sink.beginStep(simTime);
+			// Ants that dropped off the left end of the stick
+			sink.fallen(0, Math.min(iMin, numberOfAnts));
+			for( int i=iMin; i<=iMax; i++ ) {
+				// Active Ants, and whether they collided with the next one
+				sink.ant(i, antPositions[i], i<iMax
+						&& Math.abs(antPositions[i+1]-antPositions[i])<0.001);
 			}
+			// Ants that dropped off the right end of the stick
+			sink.fallen(Math.max(iMax+1, iMin), numberOfAnts);
+			sink.endStep(iMin, iMax);
 			for( int i=iMin; i<=iMax; i++ ) {
 				double newPosition = antPositions[i] + timeStep*antVelocities[i];
 				
@@ -105,6 +101,6 @@ public class SimplestAnts {
 				}		
 			}
 		}
-		System.out.format("\n");
+		sink.close();
 	}
 }
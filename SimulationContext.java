@@ -0,0 +1,138 @@
+package org.avk.ants;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Reusable buffers for doing many runs of the same configuration
+ * without allocating anything per run.
+ *
+ * <code>ProceduralAnts.doRun</code> allocates its arrays on every run.
+ * A context sizes its primitive buffers once, keeps one
+ * <code>PositionSampler</code>, and adds each run's outcome straight
+ * into a per-ant counter.
+ *
+ * It draws from the generator in exactly the same order as
+ * <code>doRun</code>, so a context and <code>doRun</code> given the same
+ * generator produce the same ants and the same outcomes.
+ *
+ * A context is not thread-safe; give each thread its own.
+ * The STEPPED, VECTORIZED, EXACT and PASS_THROUGH engines do not allocate;
+ * EVENT_DRIVEN and KINETIC still build their event queues on every run.
+ */
+public class SimulationContext {
+
+	private final int numberOfAnts;
+	private final double stickLength;
+	private final double antSpeed;
+	private final ProceduralAnts.Engine engine;
+
+	private final double[] antPositions;
+	private final double[] antVelocities;
+	private final double[] originalVelocities;
+	// Scratch space for SteppingKernel
+	private final double[] hit;
+	// Scratch space for ExactSimulation
+	private final long[] halfUnits;
+	private final PositionSampler sampler;
+	// sameSideCounts[i]: runs in which ant i fell off the end it faced initially
+	private final long[] sameSideCounts;
+	private long runCount;
+
+	public SimulationContext(int numberOfAnts, double stickLength, double antSpeed,
+			ProceduralAnts.Engine engine) {
+		this.sampler = PositionSampler.forStick(stickLength, numberOfAnts);
+		this.numberOfAnts = numberOfAnts;
+		this.stickLength = stickLength;
+		this.antSpeed = antSpeed;
+		this.engine = engine;
+		this.antPositions = new double[numberOfAnts];
+		this.antVelocities = new double[numberOfAnts];
+		this.originalVelocities = new double[numberOfAnts];
+		this.hit = new double[numberOfAnts + 1];
+		this.halfUnits = new long[numberOfAnts];
+		this.sameSideCounts = new long[numberOfAnts];
+		this.runCount = 0;
+	}
+
+	/**
+	 * Do one run and add its outcome to the counts.
+	 *
+	 * @param r supplies the positions and velocities of the ants
+	 */
+	public void doRun(RandomGenerator r) {
+		long startTime = RunMetrics.ENABLED ? System.nanoTime() : 0L;
+		sampler.sample(r, antPositions, 0);
+		for( int i=0; i<numberOfAnts; i++ ) {
+			if( r.nextBoolean() ) {
+				antVelocities[i] = -antSpeed;
+			} else {
+				antVelocities[i] = antSpeed;
+			}
+		}
+		System.arraycopy(antVelocities, 0, originalVelocities, 0, numberOfAnts);
+
+		if( engine == ProceduralAnts.Engine.PASS_THROUGH ) {
+			PassThroughSolver.solve(stickLength, antPositions, antVelocities, null);
+		} else if( engine == ProceduralAnts.Engine.EVENT_DRIVEN ) {
+			EventSimulation.doSimulation(stickLength, 0, antPositions, antVelocities);
+		} else if( engine == ProceduralAnts.Engine.VECTORIZED ) {
+			SteppingKernel.getInstance().doSimulation(0.5 * antSpeed, numberOfAnts,
+					stickLength, antSpeed, antPositions, antVelocities, hit);
+		} else if( engine == ProceduralAnts.Engine.EXACT ) {
+			ExactSimulation.doSimulation(stickLength, antSpeed, antPositions, antVelocities,
+					halfUnits);
+		} else if( engine == ProceduralAnts.Engine.KINETIC ) {
+			KineticSimulation.doSimulation(stickLength, antPositions, antVelocities);
+		} else {
+			ProceduralAnts.doSimulation(0.5 * antSpeed, numberOfAnts, stickLength, antSpeed,
+					0, antPositions, antVelocities);
+		}
+
+		if( RunMetrics.ENABLED ) {
+			RunMetrics.current().runDone(System.nanoTime() - startTime);
+		}
+
+		for( int i=0; i<numberOfAnts; i++ ) {
+			if( originalVelocities[i] == antVelocities[i] ) {
+				sameSideCounts[i]++;
+			}
+		}
+		runCount++;
+	}
+
+	/**
+	 * Add the counts of another context for the same configuration to this one.
+	 */
+	public void merge(SimulationContext other) {
+		for( int i=0; i<numberOfAnts; i++ ) {
+			sameSideCounts[i] += other.sameSideCounts[i];
+		}
+		runCount += other.runCount;
+	}
+
+	/**
+	 * Forget all runs done so far; the buffers are kept.
+	 */
+	public void reset() {
+		Arrays.fill(sameSideCounts, 0);
+		runCount = 0;
+	}
+
+	/**
+	 * Per-ant count of runs in which the ant fell off the same end
+	 * of the stick that it faced initially. This is the context's own
+	 * array, not a copy.
+	 */
+	public long[] getSameSideCounts() {
+		return sameSideCounts;
+	}
+
+	public long getRunCount() {
+		return runCount;
+	}
+
+	public int getNumberOfAnts() {
+		return numberOfAnts;
+	}
+}
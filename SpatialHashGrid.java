@@ -0,0 +1,121 @@
+package org.avk.ants;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid over the plane, stored as a hash table of cells, for
+ * finding the ants that are close to each other without checking every
+ * pair.
+ *
+ * Cell (cx, cy) holds the ants with <code>floor(x/cellSize) == cx</code>
+ * and <code>floor(y/cellSize) == cy</code>. Cells are hashed into a table
+ * with a power-of-two number of buckets, at least as many as there are
+ * ants, and the table is rebuilt from scratch by a counting sort:
+ * <code>entries[bucketStart[b] .. bucketStart[b+1]-1]</code> are the ants
+ * in bucket b. Building costs O(n + buckets) and allocates nothing.
+ *
+ * Two ants closer than <code>cellSize</code> are in the same or in
+ * adjacent cells. Unrelated cells may share a bucket, so a neighbor
+ * query can return a few extra ants, but never misses one. In a periodic
+ * world the cell coordinates wrap around, with the cells stretched a
+ * little so that a whole number of them fits across.
+ */
+public class SpatialHashGrid {
+
+	private final double cellWidth;
+	private final double cellHeight;
+	// Number of cells across a periodic world, or 0 if it does not wrap
+	private final long nx;
+	private final long ny;
+	private final int mask;
+	private final int[] bucketStart;
+	private final int[] entries;
+	private final int[] bucketOf;
+
+	/**
+	 * @param capacity the maximum number of ants
+	 * @param cellSize the smallest distance the grid must resolve
+	 * @param topology the world; its size matters only if it is periodic
+	 */
+	public SpatialHashGrid(int capacity, double cellSize, Topology topology) {
+		if( topology.isPeriodic() ) {
+			nx = Math.max(1, (long)Math.floor(topology.getWidth() / cellSize));
+			cellWidth = topology.getWidth() / nx;
+			if( topology.getHeight() > 0.0 ) {
+				ny = Math.max(1, (long)Math.floor(topology.getHeight() / cellSize));
+				cellHeight = topology.getHeight() / ny;
+			} else {
+				ny = 1;
+				cellHeight = cellSize;
+			}
+		} else {
+			nx = 0;
+			ny = 0;
+			cellWidth = cellSize;
+			cellHeight = cellSize;
+		}
+		int nBuckets = Integer.highestOneBit(Math.max(capacity, 1) - 1 | 1) << 1;
+		this.mask = nBuckets - 1;
+		this.bucketStart = new int[nBuckets + 1];
+		this.entries = new int[capacity];
+		this.bucketOf = new int[capacity];
+	}
+
+	/**
+	 * Put the ants for which <code>alive[i]</code> is set into the grid.
+	 */
+	public void build(double[] x, double[] y, boolean[] alive, int n) {
+		Arrays.fill(bucketStart, 0);
+		for( int i=0; i<n; i++ ) {
+			if( alive[i] ) {
+				int b = bucket(cellX(x[i]), cellY(y[i]));
+				bucketOf[i] = b;
+				bucketStart[b + 1]++;
+			}
+		}
+		for( int b=0; b<=mask; b++ ) {
+			bucketStart[b + 1] += bucketStart[b];
+		}
+		// Filling bucket b moves bucketStart[b] to its end, the start of b+1
+		for( int i=0; i<n; i++ ) {
+			if( alive[i] ) {
+				entries[bucketStart[bucketOf[i]]++] = i;
+			}
+		}
+		for( int b=mask; b>=0; b-- ) {
+			bucketStart[b + 1] = bucketStart[b];
+		}
+		bucketStart[0] = 0;
+	}
+
+	public long cellX(double x) {
+		long cx = (long)Math.floor(x / cellWidth);
+		return nx > 0 ? Math.floorMod(cx, nx) : cx;
+	}
+	public long cellY(double y) {
+		long cy = (long)Math.floor(y / cellHeight);
+		return ny > 0 ? Math.floorMod(cy, ny) : cy;
+	}
+
+	/**
+	 * The bucket of the cell <code>(cx, cy)</code>, wrapping the
+	 * coordinates around a periodic world
+	 */
+	public int bucket(long cx, long cy) {
+		if( nx > 0 ) {
+			cx = Math.floorMod(cx, nx);
+			cy = Math.floorMod(cy, ny);
+		}
+		return (int)AntRandom.mix64(cx * 0x9E3779B97F4A7C15L + cy) & mask;
+	}
+
+	public int bucketStart(int b) {
+		return bucketStart[b];
+	}
+	public int bucketEnd(int b) {
+		return bucketStart[b + 1];
+	}
+	public int entry(int k) {
+		return entries[k];
+	}
+}
@@ -0,0 +1,98 @@
+package org.avk.ants;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Where the speed of each ant comes from, when ants need not all move
+ * at the same speed. A distribution is written as
+ * <ul>
+ * <li> <code>constant:s</code> - every ant moves at s,
+ * <li> <code>uniform:min:max</code> - speeds uniformly distributed in [min, max),
+ * <li> <code>choice:s1,s2,...</code> - each of the listed speeds equally likely.
+ * </ul>
+ */
+public abstract class SpeedDistribution {
+
+	/**
+	 * A speed, in cm./sec.; always positive
+	 */
+	public abstract double sample(RandomGenerator r);
+
+	/**
+	 * The largest speed this distribution can return
+	 */
+	public abstract double getMaxSpeed();
+
+	public static SpeedDistribution constant(final double speed) {
+		return new SpeedDistribution() {
+			public double sample(RandomGenerator r) {
+				return speed;
+			}
+			public double getMaxSpeed() {
+				return speed;
+			}
+			public String toString() {
+				return "constant:" + speed;
+			}
+		};
+	}
+
+	public static SpeedDistribution uniform(final double min, final double max) {
+		return new SpeedDistribution() {
+			public double sample(RandomGenerator r) {
+				return min + (max - min) * r.nextDouble();
+			}
+			public double getMaxSpeed() {
+				return max;
+			}
+			public String toString() {
+				return "uniform:" + min + ":" + max;
+			}
+		};
+	}
+
+	public static SpeedDistribution choice(final double... speeds) {
+		return new SpeedDistribution() {
+			public double sample(RandomGenerator r) {
+				return speeds[r.nextInt(speeds.length)];
+			}
+			public double getMaxSpeed() {
+				double max = 0.0;
+				for( double s: speeds ) {
+					max = Math.max(max, s);
+				}
+				return max;
+			}
+			public String toString() {
+				StringBuilder b = new StringBuilder("choice:");
+				for( int i=0; i<speeds.length; i++ ) {
+					b.append(i > 0 ? "," : "").append(speeds[i]);
+				}
+				return b.toString();
+			}
+		};
+	}
+
+	/**
+	 * Parse one of the forms listed above.
+	 */
+	public static SpeedDistribution parse(String spec) {
+		String[] parts = spec.split(":");
+		SpeedDistribution retval;
+		if( parts[0].equalsIgnoreCase("constant") && parts.length == 2 ) {
+			retval = constant(Double.parseDouble(parts[1]));
+		} else if( parts[0].equalsIgnoreCase("uniform") && parts.length == 3 ) {
+			retval = uniform(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+		} else if( parts[0].equalsIgnoreCase("choice") && parts.length == 2 ) {
+			String[] values = parts[1].split(",");
+			double[] speeds = new double[values.length];
+			for( int i=0; i<values.length; i++ ) {
+				speeds[i] = Double.parseDouble(values[i].trim());
+			}
+			retval = choice(speeds);
+		} else {
+			throw new IllegalArgumentException("Unknown speed distribution: " + spec);
+		}
+		return retval;
+	}
+}
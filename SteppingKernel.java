@@ -0,0 +1,163 @@
+package org.avk.ants;
+
+/**
+ * The fixed time step simulation of <code>ProceduralAnts.doSimulation</code>,
+ * rearranged so that each step is a few branch-free passes over whole arrays:
+ * <ol>
+ * <li> move every live ant,
+ * <li> drop the ants that fell off the ends of the stick,
+ * <li> mark each neighboring pair that has just collided,
+ * <li> reverse every ant that belongs to a marked pair.
+ * </ol>
+ * Because only the leftmost and rightmost live ants can fall off, and an
+ * ant can take part in at most one collision at a time, this gives exactly
+ * the same results as the one-ant-at-a-time loop.
+ *
+ * Passes 1, 3 and 4 are supplied by a subclass. <code>getInstance</code>
+ * returns a Vector API implementation when the JVM was started with
+ * <code>--add-modules jdk.incubator.vector</code>, and a scalar one otherwise.
+ */
+public abstract class SteppingKernel {
+
+	private static SteppingKernel instance;
+
+	/**
+	 * The best kernel this JVM can run.
+	 */
+	public static synchronized SteppingKernel getInstance() {
+		if( instance == null ) {
+			instance = new ScalarSteppingKernel();
+			if( ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent() ) {
+				try {
+					instance = (SteppingKernel)Class.forName("org.avk.ants.VectorSteppingKernel")
+							.getDeclaredConstructor().newInstance();
+				} catch( Exception | LinkageError e ) {
+					// Keep the scalar kernel
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * A short name for reports
+	 */
+	public abstract String getName();
+
+	/**
+	 * <code>x[i] += timeStep*v[i]</code> for <code>from &lt;= i &lt;= to</code>
+	 */
+	public abstract void moveAll(double timeStep, double[] x, double[] v, int from, int to);
+
+	/**
+	 * For <code>from &lt;= i &lt;= to</code>, set <code>hit[i]</code> to 1 if ants
+	 * i-1 and i are touching and heading towards each other, and to 0 if not.
+	 */
+	public abstract void markCollisions(double[] x, double[] v, double[] hit, int from, int to);
+
+	/**
+	 * For <code>from &lt;= i &lt;= to</code>, reverse ant i if
+	 * <code>hit[i]</code> or <code>hit[i+1]</code> is set.
+	 */
+	public abstract void applyCollisions(double[] v, double[] hit, int from, int to);
+
+	/**
+	 * The collision pass for ants stored <code>stride</code> apart, as
+	 * the ants of many sticks are in <code>BatchSimulation</code>: for
+	 * <code>from &lt;= k &lt;= to</code>, set <code>hit[k]</code> to 1 if ants
+	 * k-stride and k are both on the stick, touching and heading towards
+	 * each other, and to 0 if not. Ants that have fallen off never collide.
+	 */
+	public abstract void markCollisions(double[] x, double[] v, double[] hit, int from, int to,
+			int stride, double stickLength);
+
+	/**
+	 * For <code>from &lt;= k &lt;= to</code>, reverse ant k if
+	 * <code>hit[k]</code> or <code>hit[k+stride]</code> is set.
+	 */
+	public abstract void applyCollisions(double[] v, double[] hit, int from, int to, int stride);
+
+	/**
+	 * One time step of <code>BatchSimulation</code>: ant i of stick b is
+	 * element <code>i*stride + b</code>, for <code>b &lt; nSticks</code>.
+	 * Makes one sweep over the rows while they are in cache; row i-1 is
+	 * reversed once both of its pairs have been marked.
+	 *
+	 * @param hit scratch space for <code>(numberOfAnts+1)*stride</code> values,
+	 * whose first and last rows are clear
+	 */
+	public void stepBatch(double timeStep, double[] x, double[] v, double[] hit,
+			int numberOfAnts, int nSticks, int stride, double stickLength) {
+		for( int i=0; i<numberOfAnts; i++ ) {
+			int from = i * stride;
+			int to = from + nSticks - 1;
+			moveAll(timeStep, x, v, from, to);
+			if( i > 0 ) {
+				markCollisions(x, v, hit, from, to, stride, stickLength);
+				applyCollisions(v, hit, from - stride, to - stride, stride);
+			}
+		}
+		int last = (numberOfAnts - 1) * stride;
+		applyCollisions(v, hit, last, last + nSticks - 1, stride);
+	}
+
+	/**
+	 * Same as <code>ProceduralAnts.doSimulation</code>, without the debug output.
+	 *
+	 * @param hit scratch space for at least <code>numberOfAnts+1</code> values
+	 */
+	public void doSimulation(double timeStep, int numberOfAnts, double stickLength,
+			double antSpeed, double[] antPositions, double[] antVelocities, double[] hit) {
+
+		int iMin = 0;
+		int iMax = numberOfAnts - 1;
+		double maxAntLifetime = stickLength / antSpeed ; // Maximum possible duration of simulation, in seconds
+
+		long nSteps = 0;
+		long nCollisions = 0;
+		for( double simTime = 0.0; simTime < maxAntLifetime; simTime += timeStep ) {
+			if( iMin > iMax ) {
+				break;
+			}
+			nSteps++;
+			moveAll(timeStep, antPositions, antVelocities, iMin, iMax);
+
+			// Only the ants at the ends can have fallen off
+			if( antPositions[iMin] < 0.0 ) {
+				iMin++;
+				if( RunMetrics.ENABLED ) {
+					RunMetrics.current().antFellOff(simTime + timeStep);
+				}
+			}
+			if( iMin <= iMax && antPositions[iMax] > stickLength ) {
+				iMax--;
+				if( RunMetrics.ENABLED ) {
+					RunMetrics.current().antFellOff(simTime + timeStep);
+				}
+			}
+			if( iMin >= iMax ) {
+				continue;
+			}
+
+			hit[iMin] = 0.0;
+			hit[iMax+1] = 0.0;
+			markCollisions(antPositions, antVelocities, hit, iMin+1, iMax);
+			if( RunMetrics.ENABLED ) {
+				for( int i=iMin+1; i<=iMax; i++ ) {
+					if( hit[i] > 0.0 ) {
+						nCollisions++;
+					}
+				}
+			}
+			applyCollisions(antVelocities, hit, iMin, iMax);
+		}
+		if( RunMetrics.ENABLED ) {
+			// Ants still on the stick when the steps ran out, such as one
+			// that has just reached an end, leave it at maxAntLifetime
+			for( int i=iMin; i<=iMax; i++ ) {
+				RunMetrics.current().antFellOff(maxAntLifetime);
+			}
+			RunMetrics.current().simulationDone(nSteps, nCollisions);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package org.avk.ants;
+
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The human-readable table of ant positions printed by the simulators:
+ * one line per time step, one column per ant, <code>----</code> for
+ * the ants that have fallen off.
+ */
+public class TextTrajectorySink extends BufferedTrajectorySink {
+
+	/**
+	 * How two ants at the same spot are shown.
+	 * PAIRS prints them as a single <code>12.5==12.5</code> column
+	 * (SimplestAnts, ProceduralAnts); MARKERS separates them with
+	 * <code> &lt;&gt; </code> instead of blanks (ClassyAnts).
+	 */
+	public enum Style { PAIRS, MARKERS }
+
+	private final Style style;
+	private final int width;
+	private final boolean showWindow;
+	// PAIRS: the previous ant opened a collided pair
+	private boolean pairOpen;
+	// MARKERS: separator owed after the previous live ant, if another ant follows
+	private String pendingSeparator;
+
+	/**
+	 * @param out where the table goes
+	 * @param style how ants that have collided are shown
+	 * @param width number of characters in a position
+	 * @param showWindow end each line with <code>iMin..iMax</code>
+	 */
+	public TextTrajectorySink(WritableByteChannel out, Style style, int width, boolean showWindow) {
+		super(out);
+		this.style = style;
+		this.width = width;
+		this.showWindow = showWindow;
+		appendAscii("\n    Time    Ant positions");
+		if( showWindow ) {
+			appendAscii("    iMin..iMax");
+		}
+		appendChar('\n');
+	}
+
+	public void beginStep(double simTime) {
+		appendChar(' ');
+		appendFixed(simTime, 6, 1);
+		appendAscii(":  ");
+		pairOpen = false;
+		pendingSeparator = null;
+	}
+
+	public void ant(int i, double position, boolean touchingNext) {
+		if( style == Style.MARKERS ) {
+			if( pendingSeparator != null ) {
+				appendAscii(pendingSeparator);
+			}
+			appendFixed(position, width, 1);
+			pendingSeparator = touchingNext ? " <> " : "    ";
+		} else if( pairOpen ) {
+			appendAscii("==");
+			appendFixed(position, width, 1);
+			pairOpen = false;
+		} else {
+			appendAscii("  ");
+			appendFixed(position, width, 1);
+			pairOpen = touchingNext;
+		}
+	}
+
+	public void fallen(int i) {
+		if( style == Style.MARKERS ) {
+			if( pendingSeparator != null ) {
+				appendAscii(pendingSeparator);
+				pendingSeparator = null;
+			}
+			appendAscii(" ----   ");
+		} else {
+			for( int pad=4; pad<width+2; pad++ ) {
+				appendChar(' ');
+			}
+			appendAscii("----");
+		}
+	}
+
+	public void endStep(int iMin, int iMax) {
+		if( showWindow ) {
+			appendAscii("  ");
+			appendInt(iMin, 2);
+			appendAscii("..");
+			appendInt(iMax, 2);
+		}
+		appendChar('\n');
+	}
+}
@@ -0,0 +1,149 @@
+package org.avk.ants;
+
+/**
+ * The shape of the world an <code>AntWorld</code> lives in.
+ *
+ * A world is the rectangle <code>[0, width] x [0, height]</code>;
+ * one-dimensional worlds have a height of 0. After every move the
+ * topology decides what happens to an ant that has crossed an edge:
+ * <ul>
+ * <li> <code>stick</code>: it falls off, as in the original problem,
+ * <li> <code>ring</code>: it comes back in at the other end,
+ * <li> <code>box</code>: it bounces off the wall,
+ * <li> <code>torus</code>: it comes back in at the opposite edge.
+ * </ul>
+ * Distances on a ring or torus are measured the short way round.
+ */
+public abstract class Topology {
+
+	protected final double width;
+	protected final double height;
+
+	protected Topology(double width, double height) {
+		this.width = width;
+		this.height = height;
+	}
+
+	public static Topology stick(double length) {
+		return new Stick(length);
+	}
+	public static Topology ring(double circumference) {
+		return new Torus(circumference, 0.0);
+	}
+	public static Topology box(double width, double height) {
+		return new Box(width, height);
+	}
+	public static Topology torus(double width, double height) {
+		return new Torus(width, height);
+	}
+
+	public double getWidth() {
+		return width;
+	}
+	public double getHeight() {
+		return height;
+	}
+
+	/**
+	 * Whether the world wraps around in x (and in y, if it has height)
+	 */
+	public abstract boolean isPeriodic();
+
+	/**
+	 * Ant i has just moved; bring it back inside the world.
+	 *
+	 * @return false if the ant has left the world for good
+	 */
+	public abstract boolean confine(double[] x, double[] y, double[] vx, double[] vy, int i);
+
+	/**
+	 * Displacement from a to b along x
+	 */
+	public double dx(double a, double b) {
+		return b - a;
+	}
+	/**
+	 * Displacement from a to b along y
+	 */
+	public double dy(double a, double b) {
+		return b - a;
+	}
+
+	static class Stick extends Topology {
+		Stick(double length) {
+			super(length, 0.0);
+		}
+		public boolean isPeriodic() {
+			return false;
+		}
+		public boolean confine(double[] x, double[] y, double[] vx, double[] vy, int i) {
+			return x[i] >= 0.0 && x[i] <= width;
+		}
+	}
+
+	static class Box extends Topology {
+		Box(double width, double height) {
+			super(width, height);
+		}
+		public boolean isPeriodic() {
+			return false;
+		}
+		public boolean confine(double[] x, double[] y, double[] vx, double[] vy, int i) {
+			if( x[i] < 0.0 ) {
+				x[i] = -x[i];
+				vx[i] = -vx[i];
+			} else if( x[i] > width ) {
+				x[i] = 2.0*width - x[i];
+				vx[i] = -vx[i];
+			}
+			if( y[i] < 0.0 ) {
+				y[i] = -y[i];
+				vy[i] = -vy[i];
+			} else if( y[i] > height ) {
+				y[i] = 2.0*height - y[i];
+				vy[i] = -vy[i];
+			}
+			return true;
+		}
+	}
+
+	static class Torus extends Topology {
+		Torus(double width, double height) {
+			super(width, height);
+		}
+		public boolean isPeriodic() {
+			return true;
+		}
+		public boolean confine(double[] x, double[] y, double[] vx, double[] vy, int i) {
+			x[i] = wrap(x[i], width);
+			if( height > 0.0 ) {
+				y[i] = wrap(y[i], height);
+			}
+			return true;
+		}
+		@Override
+		public double dx(double a, double b) {
+			return shortest(b - a, width);
+		}
+		@Override
+		public double dy(double a, double b) {
+			return height > 0.0 ? shortest(b - a, height) : b - a;
+		}
+		private static double wrap(double z, double period) {
+			if( z < 0.0 ) {
+				z += period;
+			} else if( z >= period ) {
+				z -= period;
+			}
+			return z;
+		}
+		private static double shortest(double d, double period) {
+			if( d > 0.5*period ) {
+				d -= period;
+			} else if( d < -0.5*period ) {
+				d += period;
+			}
+			return d;
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package org.avk.ants;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads a trajectory recorded by <code>TrajectoryWriter</code>.
+ * Any frame can be read directly through the frame index, without
+ * reading the frames before it. The file is memory-mapped one chunk
+ * at a time, so reading frames in order touches each chunk once.
+ */
+public class TrajectoryReader implements Closeable {
+
+	/**
+	 * The state of the ants at one time step.
+	 */
+	public static class Frame {
+		public double simTime;
+		public int iMin;
+		public int iMax;
+		// positions[i] is NaN if ant i is not on the stick
+		public final float[] positions;
+		// touchingNext[i]: ant i is at the same spot as ant i+1
+		public final boolean[] touchingNext;
+		// Ants that fell off since the previous frame, in fallOffs[0..nFallOffs)
+		public final int[] fallOffs;
+		public int nFallOffs;
+
+		Frame(int numberOfAnts) {
+			positions = new float[numberOfAnts];
+			touchingNext = new boolean[numberOfAnts];
+			fallOffs = new int[numberOfAnts];
+		}
+
+		public boolean isOnStick(int i) {
+			return !Float.isNaN(positions[i]);
+		}
+	}
+
+	private final FileChannel channel;
+	private final int numberOfAnts;
+	private final TextTrajectorySink.Style style;
+	private final int width;
+	private final boolean showWindow;
+	private final double stickLength;
+	private final long frameCount;
+	private final long indexOffset;
+	private final LongBuffer index;
+	private MappedByteBuffer chunk;
+	private long chunkStart = -1;
+
+	public TrajectoryReader(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+				TrajectoryWriter.HEADER_SIZE);
+		if( header.getLong() != TrajectoryWriter.MAGIC ) {
+			channel.close();
+			throw new IOException(path + " is not an ant trajectory file");
+		}
+		numberOfAnts = header.getInt();
+		style = TextTrajectorySink.Style.values()[header.get()];
+		width = header.get();
+		showWindow = header.get() != 0;
+		header.get();
+		stickLength = header.getDouble();
+		frameCount = header.getLong();
+		indexOffset = header.getLong();
+		index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, 8*frameCount)
+				.asLongBuffer();
+	}
+
+	public int getNumberOfAnts() {
+		return numberOfAnts;
+	}
+	public double getStickLength() {
+		return stickLength;
+	}
+	public long getFrameCount() {
+		return frameCount;
+	}
+	public TextTrajectorySink.Style getStyle() {
+		return style;
+	}
+	public int getWidth() {
+		return width;
+	}
+	public boolean getShowWindow() {
+		return showWindow;
+	}
+
+	public Frame newFrame() {
+		return new Frame(numberOfAnts);
+	}
+
+	/**
+	 * Read frame k into <code>frame</code>.
+	 */
+	public Frame readFrame(long k, Frame frame) throws IOException {
+		long offset = index.get((int)k);
+		long start = offset - offset % TrajectoryWriter.CHUNK_SIZE;
+		if( start != chunkStart ) {
+			long size = Math.min(TrajectoryWriter.CHUNK_SIZE, indexOffset - start);
+			chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+			chunkStart = start;
+		}
+		chunk.position((int)(offset - start));
+
+		frame.simTime = chunk.getDouble();
+		frame.iMin = chunk.getInt();
+		frame.iMax = chunk.getInt();
+		int first = chunk.getInt();
+		int count = chunk.getInt();
+		Arrays.fill(frame.positions, Float.NaN);
+		for( int i=first; i<first+count; i++ ) {
+			frame.positions[i] = chunk.getFloat();
+		}
+		Arrays.fill(frame.touchingNext, false);
+		int nCollisions = getVarint();
+		int i = 0;
+		for( int c=0; c<nCollisions; c++ ) {
+			i += getVarint();
+			frame.touchingNext[i] = true;
+		}
+		frame.nFallOffs = getVarint();
+		i = 0;
+		for( int f=0; f<frame.nFallOffs; f++ ) {
+			i += getVarint();
+			frame.fallOffs[f] = i;
+		}
+		return frame;
+	}
+
+	private int getVarint() {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = chunk.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while( (b & 0x80) != 0 );
+		return value;
+	}
+
+	public void close() throws IOException {
+		channel.close();
+	}
+}
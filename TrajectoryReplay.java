@@ -0,0 +1,54 @@
+package org.avk.ants;
+
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+
+/**
+ * Prints a recorded trajectory as the text table that the simulator
+ * that recorded it would have printed.
+ *
+ * To record and replay:
+ * <pre>
+ * $ java -Dants.trajectory=binary -Dants.trajectory.file=run.bin org.avk.ants.ClassyAnts 6
+ * $ java org.avk.ants.TrajectoryReplay run.bin [firstFrame] [lastFrame]
+ * </pre>
+ */
+public class TrajectoryReplay {
+
+	/**
+	 * @param args trajectory file, and optionally the range of frames to print
+	 */
+	public static void main(String[] args) throws Exception {
+		if( args.length < 1 ) {
+			System.out.println("Usage: TrajectoryReplay trajectoryFile [firstFrame] [lastFrame]");
+			return;
+		}
+		try( TrajectoryReader reader = new TrajectoryReader(Path.of(args[0])) ) {
+			long firstFrame = 0;
+			long lastFrame = reader.getFrameCount() - 1;
+			if( args.length >= 2 ) {
+				firstFrame = Long.parseLong(args[1]);
+			}
+			if( args.length >= 3 ) {
+				lastFrame = Math.min(lastFrame, Long.parseLong(args[2]));
+			}
+
+			TrajectorySink sink = new TextTrajectorySink(Channels.newChannel(System.out),
+					reader.getStyle(), reader.getWidth(), reader.getShowWindow());
+			TrajectoryReader.Frame frame = reader.newFrame();
+			for( long k=firstFrame; k<=lastFrame; k++ ) {
+				reader.readFrame(k, frame);
+				sink.beginStep(frame.simTime);
+				for( int i=0; i<reader.getNumberOfAnts(); i++ ) {
+					if( frame.isOnStick(i) ) {
+						sink.ant(i, frame.positions[i], frame.touchingNext[i]);
+					} else {
+						sink.fallen(i);
+					}
+				}
+				sink.endStep(frame.iMin, frame.iMax);
+			}
+			sink.close();
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package org.avk.ants;
+
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+
+/**
+ * Receives the positions of the ants at every time step of a simulation.
+ *
+ * For each time step the simulator calls <code>beginStep</code>, then
+ * <code>ant</code> or <code>fallen</code> once for every ant in order of
+ * position, then <code>endStep</code>. Output may be buffered until
+ * <code>flush</code> is called, and is complete once <code>close</code>
+ * has been called.
+ */
+public interface TrajectorySink {
+
+	/**
+	 * A new time step begins
+	 */
+	void beginStep(double simTime);
+
+	/**
+	 * Ant i is on the stick at <code>position</code>
+	 *
+	 * @param touchingNext true if ant i+1 is at the same spot
+	 */
+	void ant(int i, double position, boolean touchingNext);
+
+	/**
+	 * Ant i has fallen off the stick
+	 */
+	void fallen(int i);
+
+	/**
+	 * Ants <code>from</code> to <code>to-1</code> have fallen off the stick.
+	 * Lets a sink that does not show fallen ants skip them all at once.
+	 */
+	default void fallen(int from, int to) {
+		for( int i=from; i<to; i++ ) {
+			fallen(i);
+		}
+	}
+
+	/**
+	 * The time step is complete
+	 *
+	 * @param iMin index of the leftmost ant still on the stick
+	 * @param iMax index of the rightmost ant still on the stick
+	 */
+	void endStep(int iMin, int iMax);
+
+	/**
+	 * Write out anything that is still buffered
+	 */
+	void flush();
+
+	/**
+	 * The trajectory is complete. Does not close <code>System.out</code>.
+	 */
+	default void close() {
+		flush();
+	}
+
+	/**
+	 * A sink writing to <code>System.out</code>, or, for "binary", to the file
+	 * named by <code>-Dants.trajectory.file</code> (default trajectory.bin).
+	 * A binary file holds a single simulation; the next one replaces it.
+	 * For "live", the trajectory is shown in a browser by <code>VisualizerServer</code>.
+	 *
+	 * @param kind "text", "csv", "binary", "live" or "none"
+	 * @param numberOfAnts
+	 * @param stickLength
+	 * @param style how text output shows ants that have collided
+	 * @param width number of characters in a text position
+	 * @param showWindow whether text output ends each line with <code>iMin..iMax</code>
+	 */
+	static TrajectorySink create(String kind, int numberOfAnts, double stickLength,
+			TextTrajectorySink.Style style, int width, boolean showWindow) {
+		if( kind.equalsIgnoreCase("none") ) {
+			return new NullTrajectorySink();
+		} else if( kind.equalsIgnoreCase("binary") ) {
+			Path path = Path.of(System.getProperty("ants.trajectory.file", "trajectory.bin"));
+			return new TrajectoryWriter(path, numberOfAnts, stickLength, style, width, showWindow);
+		} else if( kind.equalsIgnoreCase("live") ) {
+			return new LiveTrajectorySink(VisualizerServer.getInstance(), numberOfAnts, stickLength);
+		} else if( kind.equalsIgnoreCase("csv") ) {
+			return new CsvTrajectorySink(Channels.newChannel(System.out));
+		}
+		return new TextTrajectorySink(Channels.newChannel(System.out), style, width, showWindow);
+	}
+
+	/**
+	 * The kind of sink chosen with <code>-Dants.trajectory=text|csv|binary|live|none</code>
+	 */
+	static String kindFromProperties() {
+		return System.getProperty("ants.trajectory", "text");
+	}
+}
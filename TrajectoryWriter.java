@@ -0,0 +1,240 @@
+package org.avk.ants;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Records a trajectory to a compact binary file, for replay or
+ * offline analysis with <code>TrajectoryReader</code>.
+ *
+ * The file starts with a 64 byte header:
+ * <pre>
+ *  0  magic "ANTTRAJ1"
+ *  8  int    numberOfAnts
+ * 12  byte   text style (0 PAIRS, 1 MARKERS), byte width, byte showWindow, byte unused
+ * 16  double stickLength
+ * 24  long   frameCount
+ * 32  long   indexOffset
+ * </pre>
+ * followed by one frame per time step:
+ * <pre>
+ * double simTime
+ * int    iMin, iMax    the live window reported by the simulator
+ * int    first, count  the ants whose positions follow
+ * float  positions[count]   NaN for ants that have fallen off
+ * varint number of collisions, then the index of each ant that touches
+ *        the next one, as the difference from the previous such index
+ * varint number of fall-offs, then the index of each ant that fell off
+ *        since the previous frame, delta-encoded in the same way
+ * </pre>
+ * and finally the index: the file offset of every frame, as longs.
+ *
+ * Frames are written through memory-mapped chunks of CHUNK_SIZE bytes.
+ * A frame never straddles two chunks, so the reader can map the file the
+ * same way.
+ */
+public class TrajectoryWriter implements TrajectorySink {
+
+	static final long MAGIC = 0x414E545452414A31L;		// "ANTTRAJ1"
+	static final int HEADER_SIZE = 64;
+	static final int CHUNK_SIZE = 1 << 26;
+
+	private final FileChannel channel;
+	private final int numberOfAnts;
+	private MappedByteBuffer chunk;
+	private long chunkStart;
+	private long[] frameOffsets = new long[1024];
+	private long frameCount;
+
+	// The frame being collected
+	private double simTime;
+	private final float[] positions;
+	private int firstLive;
+	private int lastLive;
+	private final int[] collisions;
+	private int nCollisions;
+	private final int[] fallOffs;
+	private int nFallOffs;
+	private final boolean[] hasFallen;
+	private final ByteBuffer frame;
+
+	/**
+	 * @param path the file to create (or replace)
+	 * @param numberOfAnts
+	 * @param stickLength
+	 * @param style recorded for replay as text
+	 * @param width recorded for replay as text
+	 * @param showWindow recorded for replay as text
+	 */
+	public TrajectoryWriter(Path path, int numberOfAnts, double stickLength,
+			TextTrajectorySink.Style style, int width, boolean showWindow) {
+		this.numberOfAnts = numberOfAnts;
+		this.positions = new float[numberOfAnts];
+		this.collisions = new int[numberOfAnts];
+		this.fallOffs = new int[numberOfAnts];
+		this.hasFallen = new boolean[numberOfAnts];
+		// Fixed part, positions, and at most 5 bytes per varint
+		this.frame = ByteBuffer.allocate(24 + 4*numberOfAnts + 5*(2*numberOfAnts + 2));
+		if( frame.capacity() > CHUNK_SIZE ) {
+			throw new IllegalArgumentException(String.format(
+					"Too many ants (%d) for one trajectory frame", numberOfAnts));
+		}
+		try {
+			this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			this.chunkStart = 0;
+			this.chunk = channel.map(FileChannel.MapMode.READ_WRITE, chunkStart, CHUNK_SIZE);
+		} catch( IOException e ) {
+			throw new UncheckedIOException(e);
+		}
+		chunk.putLong(MAGIC);
+		chunk.putInt(numberOfAnts);
+		chunk.put((byte)style.ordinal());
+		chunk.put((byte)width);
+		chunk.put((byte)(showWindow ? 1 : 0));
+		chunk.put((byte)0);
+		chunk.putDouble(stickLength);
+		chunk.position(HEADER_SIZE);
+		startFrame();
+	}
+
+	private void startFrame() {
+		firstLive = numberOfAnts;
+		lastLive = -1;
+		nCollisions = 0;
+		nFallOffs = 0;
+	}
+
+	public void beginStep(double simTime) {
+		this.simTime = simTime;
+	}
+
+	public void ant(int i, double position, boolean touchingNext) {
+		positions[i] = (float)position;
+		firstLive = Math.min(firstLive, i);
+		lastLive = Math.max(lastLive, i);
+		if( touchingNext ) {
+			collisions[nCollisions++] = i;
+		}
+	}
+
+	public void fallen(int i) {
+		positions[i] = Float.NaN;
+		if( !hasFallen[i] ) {
+			hasFallen[i] = true;
+			fallOffs[nFallOffs++] = i;
+		}
+	}
+
+	public void endStep(int iMin, int iMax) {
+		// Store every ant inside the live window, or inside the range
+		// of ants reported alive if that is wider.
+		int first = Math.max(0, Math.min(iMin, firstLive));
+		int last = Math.min(numberOfAnts - 1, Math.max(iMax, lastLive));
+		int count = Math.max(0, last - first + 1);
+
+		frame.clear();
+		frame.putDouble(simTime);
+		frame.putInt(iMin);
+		frame.putInt(iMax);
+		frame.putInt(first);
+		frame.putInt(count);
+		for( int i=first; i<first+count; i++ ) {
+			frame.putFloat(positions[i]);
+		}
+		putDeltas(collisions, nCollisions);
+		putDeltas(fallOffs, nFallOffs);
+		frame.flip();
+
+		if( chunk.remaining() < frame.remaining() ) {
+			nextChunk();
+		}
+		if( frameCount == frameOffsets.length ) {
+			frameOffsets = Arrays.copyOf(frameOffsets, 2*frameOffsets.length);
+		}
+		frameOffsets[(int)frameCount++] = chunkStart + chunk.position();
+		chunk.put(frame);
+		startFrame();
+	}
+
+	private void putDeltas(int[] indices, int n) {
+		putVarint(n);
+		int previous = 0;
+		for( int k=0; k<n; k++ ) {
+			putVarint(indices[k] - previous);
+			previous = indices[k];
+		}
+	}
+
+	private void putVarint(int value) {
+		while( (value & ~0x7F) != 0 ) {
+			frame.put((byte)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		frame.put((byte)value);
+	}
+
+	private void nextChunk() {
+		try {
+			chunkStart += CHUNK_SIZE;
+			chunk = channel.map(FileChannel.MapMode.READ_WRITE, chunkStart, CHUNK_SIZE);
+		} catch( IOException e ) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Frames go straight to the mapped file; there is nothing to flush
+	 * until the trajectory is closed.
+	 */
+	public void flush() {
+	}
+
+	/**
+	 * Write the frame index, complete the header and trim the file.
+	 */
+	@Override
+	public void close() {
+		try {
+			long indexOffset = chunkStart + chunk.position();
+			chunk.force();
+			chunk = null;
+
+			ByteBuffer block = ByteBuffer.allocate(8 * 4096);
+			long position = indexOffset;
+			for( long k=0; k<frameCount; k++ ) {
+				block.putLong(frameOffsets[(int)k]);
+				if( !block.hasRemaining() || k == frameCount-1 ) {
+					block.flip();
+					while( block.hasRemaining() ) {
+						position += channel.write(block, position);
+					}
+					block.clear();
+				}
+			}
+
+			ByteBuffer header = ByteBuffer.allocate(16);
+			header.putLong(frameCount);
+			header.putLong(indexOffset);
+			header.flip();
+			channel.write(header, 24);
+			try {
+				channel.truncate(position);
+			} catch( IOException e ) {
+				// Some platforms refuse while the last chunk is still mapped;
+				// the zeros left after the index are never read.
+			}
+			channel.force(true);
+			channel.close();
+		} catch( IOException e ) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
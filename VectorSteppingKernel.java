@@ -0,0 +1,109 @@
+package org.avk.ants;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The stepping passes written with the (incubating) Vector API, so that
+ * each pass handles as many ants per instruction as the hardware allows:
+ * 4 doubles with AVX2, 8 with AVX-512.
+ * Only loaded by <code>SteppingKernel.getInstance</code> when the
+ * <code>jdk.incubator.vector</code> module is present.
+ */
+public class VectorSteppingKernel extends SteppingKernel {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	public String getName() {
+		return "vector" + SPECIES.length();
+	}
+
+	public void moveAll(double timeStep, double[] x, double[] v, int from, int to) {
+		int i = from;
+		int upperBound = from + SPECIES.loopBound(to + 1 - from);
+		for( ; i<upperBound; i+=SPECIES.length() ) {
+			DoubleVector xv = DoubleVector.fromArray(SPECIES, x, i);
+			DoubleVector vv = DoubleVector.fromArray(SPECIES, v, i);
+			xv.add(vv.mul(timeStep)).intoArray(x, i);
+		}
+		for( ; i<=to; i++ ) {
+			x[i] = x[i] + timeStep*v[i];
+		}
+	}
+
+	public void markCollisions(double[] x, double[] v, double[] hit, int from, int to) {
+		int i = from;
+		int upperBound = from + SPECIES.loopBound(to + 1 - from);
+		DoubleVector zero = DoubleVector.zero(SPECIES);
+		DoubleVector one = DoubleVector.broadcast(SPECIES, 1.0);
+		for( ; i<upperBound; i+=SPECIES.length() ) {
+			DoubleVector xv = DoubleVector.fromArray(SPECIES, x, i);
+			DoubleVector xLeft = DoubleVector.fromArray(SPECIES, x, i-1);
+			DoubleVector vv = DoubleVector.fromArray(SPECIES, v, i);
+			DoubleVector vLeft = DoubleVector.fromArray(SPECIES, v, i-1);
+			VectorMask<Double> touching = xv.sub(xLeft).abs().compare(VectorOperators.LT, Ant.epsX);
+			VectorMask<Double> approaching = vv.compare(VectorOperators.NE, vLeft);
+			zero.blend(one, touching.and(approaching)).intoArray(hit, i);
+		}
+		for( ; i<=to; i++ ) {
+			boolean touching = Math.abs(x[i] - x[i-1]) < Ant.epsX;
+			boolean approaching = v[i] != v[i-1];
+			hit[i] = (touching & approaching) ? 1.0 : 0.0;
+		}
+	}
+
+	public void applyCollisions(double[] v, double[] hit, int from, int to) {
+		int i = from;
+		int upperBound = from + SPECIES.loopBound(to + 1 - from);
+		for( ; i<upperBound; i+=SPECIES.length() ) {
+			DoubleVector vv = DoubleVector.fromArray(SPECIES, v, i);
+			DoubleVector hits = DoubleVector.fromArray(SPECIES, hit, i)
+					.add(DoubleVector.fromArray(SPECIES, hit, i+1));
+			vv.blend(vv.neg(), hits.compare(VectorOperators.GT, 0.0)).intoArray(v, i);
+		}
+		for( ; i<=to; i++ ) {
+			v[i] = (hit[i] + hit[i+1] > 0.0) ? -v[i] : v[i];
+		}
+	}
+
+	public void markCollisions(double[] x, double[] v, double[] hit, int from, int to,
+			int stride, double stickLength) {
+		int k = from;
+		int upperBound = from + SPECIES.loopBound(to + 1 - from);
+		DoubleVector zero = DoubleVector.zero(SPECIES);
+		DoubleVector one = DoubleVector.broadcast(SPECIES, 1.0);
+		for( ; k<upperBound; k+=SPECIES.length() ) {
+			DoubleVector xv = DoubleVector.fromArray(SPECIES, x, k);
+			DoubleVector xLeft = DoubleVector.fromArray(SPECIES, x, k-stride);
+			DoubleVector vv = DoubleVector.fromArray(SPECIES, v, k);
+			DoubleVector vLeft = DoubleVector.fromArray(SPECIES, v, k-stride);
+			VectorMask<Double> touching = xv.sub(xLeft).abs().compare(VectorOperators.LT, Ant.epsX);
+			VectorMask<Double> approaching = vv.compare(VectorOperators.NE, vLeft);
+			VectorMask<Double> onStick = xLeft.compare(VectorOperators.GE, 0.0)
+					.and(xv.compare(VectorOperators.LE, stickLength));
+			zero.blend(one, touching.and(approaching).and(onStick)).intoArray(hit, k);
+		}
+		for( ; k<=to; k++ ) {
+			boolean touching = Math.abs(x[k] - x[k-stride]) < Ant.epsX;
+			boolean approaching = v[k] != v[k-stride];
+			boolean onStick = x[k-stride] >= 0.0 & x[k] <= stickLength;
+			hit[k] = (touching & approaching & onStick) ? 1.0 : 0.0;
+		}
+	}
+
+	public void applyCollisions(double[] v, double[] hit, int from, int to, int stride) {
+		int k = from;
+		int upperBound = from + SPECIES.loopBound(to + 1 - from);
+		for( ; k<upperBound; k+=SPECIES.length() ) {
+			DoubleVector vv = DoubleVector.fromArray(SPECIES, v, k);
+			DoubleVector hits = DoubleVector.fromArray(SPECIES, hit, k)
+					.add(DoubleVector.fromArray(SPECIES, hit, k+stride));
+			vv.blend(vv.neg(), hits.compare(VectorOperators.GT, 0.0)).intoArray(v, k);
+		}
+		for( ; k<=to; k++ ) {
+			v[k] = (hit[k] + hit[k+stride] > 0.0) ? -v[k] : v[k];
+		}
+	}
+}
@@ -0,0 +1,285 @@
+package org.avk.ants;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Shows a running simulation in a browser.
+ *
+ * A small HTTP server on the loopback interface serves a page with a
+ * canvas at <code>/</code>, and streams frames to it as Server-Sent
+ * Events at <code>/frames</code>. Start a simulation with
+ * <code>-Dants.trajectory=live</code> and open
+ * <code>http://localhost:8077/</code>; <code>-Dants.live.port</code>
+ * chooses the port, and <code>-Dants.live.linger</code> keeps the last
+ * frame on show for that many seconds after the simulation ends.
+ *
+ * The simulation thread never waits for a viewer. <code>publish</code>
+ * returns at once unless <code>PUBLISH_INTERVAL</code> has passed since
+ * the last frame; then it copies at most <code>MAX_POINTS</code>
+ * positions, evenly spaced over the ants, into a new immutable frame
+ * and puts it in a ring of recent frames. Each viewer's thread wakes up
+ * <code>FRAMES_PER_SECOND</code> times a second, sends the newest frame
+ * if it has not sent it yet, and skips anything older, until the server
+ * is finished.
+ */
+public class VisualizerServer {
+
+	public static final int MAX_POINTS = 20000;
+	public static final long PUBLISH_INTERVAL = 20000000L;	// ns
+	public static final int FRAMES_PER_SECOND = 25;
+
+	private static VisualizerServer instance;
+
+	private final HttpServer server;
+	private final FrameRing frames = new FrameRing(8);
+	private long lastPublish = Long.MIN_VALUE / 2;
+	// Set by finish; ends the viewers' threads
+	private volatile boolean stopped;
+
+	/**
+	 * A downsampled snapshot of the ants. For a one-dimensional world
+	 * <code>y</code> is null and <code>height</code> is 0.
+	 */
+	static class Frame {
+		final long sequence;
+		final double simTime;
+		final double width;
+		final double height;
+		final int antCount;
+		final float[] x;
+		final float[] y;
+
+		Frame(long sequence, double simTime, double width, double height, int antCount,
+				float[] x, float[] y) {
+			this.sequence = sequence;
+			this.simTime = simTime;
+			this.width = width;
+			this.height = height;
+			this.antCount = antCount;
+			this.x = x;
+			this.y = y;
+		}
+
+		String toJson() {
+			StringBuilder b = new StringBuilder(16 + 16 * x.length);
+			b.append(String.format(Locale.ROOT, "{\"t\":%.3f,\"w\":%s,\"h\":%s,\"n\":%d,\"x\":[",
+					simTime, width, height, antCount));
+			appendArray(b, x);
+			b.append("]");
+			if( y != null ) {
+				b.append(",\"y\":[");
+				appendArray(b, y);
+				b.append("]");
+			}
+			return b.append("}").toString();
+		}
+
+		private static void appendArray(StringBuilder b, float[] values) {
+			for( int i=0; i<values.length; i++ ) {
+				if( i > 0 ) {
+					b.append(',');
+				}
+				// Two decimals are plenty for a picture
+				b.append(Math.round(values[i] * 100.0f) / 100.0f);
+			}
+		}
+	}
+
+	/**
+	 * The most recent frames. <code>offer</code> never blocks and simply
+	 * overwrites the oldest slot; <code>latest</code> returns the newest
+	 * frame. Frames are immutable, so a reader never sees a partial one.
+	 */
+	static class FrameRing {
+		private final AtomicReferenceArray<Frame> slots;
+		private final AtomicLong published = new AtomicLong(-1);
+		private final int mask;
+
+		FrameRing(int size) {
+			this.slots = new AtomicReferenceArray<Frame>(size);
+			this.mask = size - 1;
+		}
+
+		long nextSequence() {
+			return published.get() + 1;
+		}
+
+		void offer(Frame frame) {
+			slots.set((int)(frame.sequence & mask), frame);
+			published.set(frame.sequence);
+		}
+
+		Frame latest() {
+			long sequence = published.get();
+			return sequence < 0 ? null : slots.get((int)(sequence & mask));
+		}
+	}
+
+	private VisualizerServer(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/", this::servePage);
+		server.createContext("/frames", this::serveFrames);
+		// One thread per viewer; daemons, so they do not keep the JVM alive
+		server.setExecutor(Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "visualizer");
+			t.setDaemon(true);
+			return t;
+		}));
+		server.start();
+	}
+
+	/**
+	 * The server, started on first use on <code>-Dants.live.port</code> (default 8077)
+	 */
+	public static synchronized VisualizerServer getInstance() {
+		if( instance == null ) {
+			int port = Integer.getInteger("ants.live.port", 8077);
+			try {
+				instance = new VisualizerServer(port);
+			} catch( IOException e ) {
+				throw new UncheckedIOException(e);
+			}
+			System.err.format("Watch the ants at http://localhost:%d/\n", port);
+		}
+		return instance;
+	}
+
+	/**
+	 * Whether <code>publish</code> would take a frame now; lets a caller
+	 * skip collecting positions that would be thrown away.
+	 */
+	public boolean wantsFrame() {
+		return System.nanoTime() - lastPublish >= PUBLISH_INTERVAL;
+	}
+
+	/**
+	 * Offer the positions of a one-dimensional world. Call from one thread only.
+	 *
+	 * @param x positions of ants 0 .. n-1; NaN for ants that are gone
+	 */
+	public void publish(double simTime, double width, double[] x, int n) {
+		publish(simTime, width, 0.0, x, null, null, n);
+	}
+
+	/**
+	 * Offer the positions of a world. Call from one thread only.
+	 *
+	 * @param y null for a one-dimensional world
+	 * @param alive null if every ant with a position that is not NaN is shown
+	 */
+	public void publish(double simTime, double width, double height,
+			double[] x, double[] y, boolean[] alive, int n) {
+		long now = System.nanoTime();
+		if( now - lastPublish < PUBLISH_INTERVAL ) {
+			return;
+		}
+		lastPublish = now;
+		int stride = Math.max(1, (n + MAX_POINTS - 1) / MAX_POINTS);
+		int nPoints = 0;
+		float[] px = new float[(n + stride - 1) / stride];
+		float[] py = y == null ? null : new float[px.length];
+		for( int i=0; i<n; i+=stride ) {
+			if( (alive != null && !alive[i]) || Double.isNaN(x[i]) ) {
+				continue;
+			}
+			px[nPoints] = (float)x[i];
+			if( py != null ) {
+				py[nPoints] = (float)y[i];
+			}
+			nPoints++;
+		}
+		if( nPoints < px.length ) {
+			px = Arrays.copyOf(px, nPoints);
+			py = py == null ? null : Arrays.copyOf(py, nPoints);
+		}
+		frames.offer(new Frame(frames.nextSequence(), simTime, width, height, n, px, py));
+	}
+
+	/**
+	 * The simulation is over: keep serving the last frame for
+	 * <code>-Dants.live.linger</code> seconds, then stop the server.
+	 * The server's own thread would otherwise keep the JVM running.
+	 * The next <code>getInstance</code> starts a new server.
+	 */
+	public void finish() {
+		long seconds = Long.getLong("ants.live.linger", 0);
+		if( seconds > 0 ) {
+			try {
+				Thread.sleep(seconds * 1000);
+			} catch( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		stopped = true;
+		synchronized( VisualizerServer.class ) {
+			server.stop(0);
+			if( instance == this ) {
+				instance = null;
+			}
+		}
+	}
+
+	private void servePage(HttpExchange exchange) throws IOException {
+		byte[] page = PAGE.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+		exchange.sendResponseHeaders(200, page.length);
+		try( OutputStream out = exchange.getResponseBody() ) {
+			out.write(page);
+		}
+	}
+
+	private void serveFrames(HttpExchange exchange) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+		exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+		exchange.sendResponseHeaders(200, 0);
+		long lastSent = -1;
+		try( OutputStream out = exchange.getResponseBody() ) {
+			while( !stopped ) {
+				Frame frame = frames.latest();
+				if( frame != null && frame.sequence != lastSent ) {
+					lastSent = frame.sequence;
+					out.write(("data: " + frame.toJson() + "\n\n").getBytes(StandardCharsets.UTF_8));
+					out.flush();
+				}
+				Thread.sleep(1000 / FRAMES_PER_SECOND);
+			}
+		} catch( IOException e ) {
+			// The viewer has gone away
+		} catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static final String PAGE = String.join("\n",
+			"<!DOCTYPE html>",
+			"<html><head><meta charset=\"utf-8\"><title>Ants</title>",
+			"<style>body{margin:0;background:#111;color:#ccc;font:14px monospace}",
+			"canvas{display:block}#info{position:absolute;top:4px;left:8px}</style></head>",
+			"<body><div id=\"info\">waiting for frames...</div><canvas id=\"c\"></canvas><script>",
+			"const c=document.getElementById('c'),g=c.getContext('2d'),info=document.getElementById('info');",
+			"function fit(){c.width=innerWidth;c.height=innerHeight;}fit();onresize=fit;",
+			"new EventSource('/frames').onmessage=function(e){",
+			" const f=JSON.parse(e.data),m=30,w=c.width-2*m;",
+			" g.fillStyle='#111';g.fillRect(0,0,c.width,c.height);g.fillStyle='#fc3';",
+			" if(f.y){const s=Math.min(w/f.w,(c.height-2*m)/f.h);",
+			"  g.strokeStyle='#555';g.strokeRect(m,m,f.w*s,f.h*s);",
+			"  for(let i=0;i<f.x.length;i++)g.fillRect(m+f.x[i]*s-1,m+f.y[i]*s-1,2,2);",
+			" }else{const s=w/f.w,y=c.height/2;",
+			"  g.strokeStyle='#555';g.beginPath();g.moveTo(m,y);g.lineTo(m+w,y);g.stroke();",
+			"  for(let i=0;i<f.x.length;i++)g.fillRect(m+f.x[i]*s-2,y-6,4,12);}",
+			" info.textContent='t = '+f.t.toFixed(1)+' s   '+f.x.length+' of '+f.n+' ants shown';",
+			"};",
+			"</script></body></html>");
+}
@@ -0,0 +1,79 @@
+package org.avk.ants;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Measures how many bytes a run allocates, with <code>ProceduralAnts.doRun</code>
+ * and with a reused <code>SimulationContext</code>.
+ * The context should report 0 bytes per run for the STEPPED, VECTORIZED
+ * and PASS_THROUGH engines once the JIT has warmed up.
+ *
+ * Built with the benchmarks profile; run it with
+ * <code>java -cp target/benchmarks.jar org.avk.ants.AllocationBenchmark</code>.
+ */
+public class AllocationBenchmark {
+
+	/**
+	 * @param args [numberOfAnts] [stickLength] [antSpeed] [# runs] [engine]
+	 */
+	public static void main(String[] args) {
+		int numberOfAnts = 7;
+		double stickLength = 100.0;
+		double antSpeed = 1.0;
+		int nRuns = 100000;
+		ProceduralAnts.Engine engine = ProceduralAnts.Engine.STEPPED;
+
+		try {
+			if( args.length >= 1 ) {
+				numberOfAnts = Integer.parseInt(args[0]);
+			}
+			if( args.length >= 2 ) {
+				stickLength = Double.parseDouble(args[1]);
+			}
+			if( args.length >= 3 ) {
+				antSpeed = Double.parseDouble(args[2]);
+			}
+			if( args.length >= 4 ) {
+				nRuns = Integer.parseInt(args[3]);
+			}
+			if( args.length >= 5 ) {
+				engine = ProceduralAnts.Engine.valueOf(args[4].toUpperCase().replace('-', '_'));
+			}
+		} catch( Exception e ) {
+			System.out.format("Could not parse command line: %s\n", e);
+			System.out.println("Usage: AllocationBenchmark [numberOfAnts] [stickLength] [antSpeed] [# runs] [engine]");
+			return;
+		}
+
+		com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+
+		// Warm up both paths, then measure each one
+		Random r = new Random(2177);
+		SimulationContext context = new SimulationContext(numberOfAnts, stickLength,
+				antSpeed, engine);
+		for( int i=0; i<nRuns; i++ ) {
+			ProceduralAnts.doRun(numberOfAnts, stickLength, antSpeed, 0, r, engine);
+			context.doRun(r);
+		}
+
+		long before = threads.getThreadAllocatedBytes(threadId);
+		for( int i=0; i<nRuns; i++ ) {
+			ProceduralAnts.doRun(numberOfAnts, stickLength, antSpeed, 0, r, engine);
+		}
+		long doRunBytes = threads.getThreadAllocatedBytes(threadId) - before;
+
+		before = threads.getThreadAllocatedBytes(threadId);
+		for( int i=0; i<nRuns; i++ ) {
+			context.doRun(r);
+		}
+		long contextBytes = threads.getThreadAllocatedBytes(threadId) - before;
+
+		System.out.format("%d runs of %d ants on a %.0f cm. stick, %s engine\n",
+				nRuns, numberOfAnts, stickLength, engine);
+		System.out.format("  doRun:              %10.1f bytes/run\n", doRunBytes/(double)nRuns);
+		System.out.format("  SimulationContext:  %10.1f bytes/run\n", contextBytes/(double)nRuns);
+	}
+}
@@ -0,0 +1,88 @@
+package org.avk.ants;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the small operations that the simulators call in
+ * their inner loops.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AntBenchmark {
+
+	@Param({"7", "100", "10000"})
+	public int numberOfAnts;
+
+	@Param({"100000"})
+	public double stickLength;
+
+	@Param({"1.0"})
+	public double antSpeed;
+
+	private Ant left;
+	private Ant right;
+	private double[] antPositions;
+	private double[] antVelocities;
+	private List<Ant> unsortedAnts;
+	private List<Ant> theAnts;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Random r = new Random(31103);
+		left = new Ant(0, 10.0, antSpeed);
+		right = new Ant(1, 20.0, -antSpeed);
+		// Two ants at the same spot heading towards each other;
+		// every call to justCollided reverses both of them.
+		antPositions = new double[] { 15.0, 15.0 };
+		antVelocities = new double[] { antSpeed, -antSpeed };
+		unsortedAnts = new ArrayList<Ant>();
+		for( int i=0; i<numberOfAnts; i++ ) {
+			double velocity = r.nextBoolean() ? antSpeed : -antSpeed;
+			unsortedAnts.add(new Ant(i, Math.rint(r.nextDouble()*stickLength), velocity));
+		}
+		theAnts = new ArrayList<Ant>(unsortedAnts);
+	}
+
+	@Benchmark
+	public double timeToCollision() {
+		return left.timeToCollision(right);
+	}
+
+	@Benchmark
+	public boolean justCollided() {
+		return ProceduralAnts.justCollided(0, 1, antPositions, antVelocities);
+	}
+
+	/**
+	 * Sorting the ants as ClassyAnts does, through <code>Ant.compareTo</code>.
+	 * Includes restoring the unsorted order first.
+	 */
+	@Benchmark
+	public List<Ant> sortAnts() {
+		theAnts.clear();
+		theAnts.addAll(unsortedAnts);
+		Collections.sort(theAnts);
+		return theAnts;
+	}
+}
@@ -0,0 +1,20 @@
+package org.avk.ants;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Entry point of <code>benchmarks.jar</code>.
+ * Accepts the usual JMH command line (e.g. <code>-p numberOfAnts=1000</code>,
+ * or a regular expression selecting benchmarks) and always adds the gc
+ * profiler, so that every result comes with its allocation rate.
+ */
+public class RunBenchmarks {
+
+	public static void main(String[] args) throws Exception {
+		String[] withProfiler = new String[args.length + 2];
+		withProfiler[0] = "-prof";
+		withProfiler[1] = "gc";
+		System.arraycopy(args, 0, withProfiler, 2, args.length);
+		Main.main(withProfiler);
+	}
+}
@@ -0,0 +1,135 @@
+package org.avk.ants;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Whole-run benchmarks: the three simulators, and the pieces of
+ * <code>ProceduralAnts.doRun</code>.
+ * Reports throughput and the latency distribution of each call.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class SimulatorBenchmark {
+
+	@Param({"7", "100"})
+	public int numberOfAnts;
+
+	@Param({"100", "1000"})
+	public double stickLength;
+
+	@Param({"1.0"})
+	public double antSpeed;
+
+	private Random r;
+	private AntRandom campaignRandom;
+	private long nextRun;
+	private long[] counts;
+	private double[] initialPositions;
+	private double[] initialVelocities;
+	private double[] antPositions;
+	private double[] antVelocities;
+	private PrintStream stdout;
+	private String[] mainArgs;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		r = new Random(2177);
+		campaignRandom = new AntRandom(2177);
+		nextRun = 0;
+		counts = new long[numberOfAnts];
+		initialPositions = ProceduralAnts.initializePositions(stickLength, numberOfAnts, r);
+		initialVelocities = ProceduralAnts.initializeVelocities(antSpeed, numberOfAnts, r);
+		antPositions = new double[numberOfAnts];
+		antVelocities = new double[numberOfAnts];
+		mainArgs = new String[] { String.valueOf(numberOfAnts) };
+		// SimplestAnts and ClassyAnts print as they go; throw that away
+		stdout = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		System.setOut(stdout);
+	}
+
+	/**
+	 * Only doRun depends on the engine, so it gets its own parameter.
+	 */
+	@State(Scope.Thread)
+	public static class EngineState {
+		@Param({"STEPPED", "VECTORIZED", "EVENT_DRIVEN", "PASS_THROUGH", "EXACT", "BATCHED", "KINETIC"})
+		public ProceduralAnts.Engine engine;
+	}
+
+	@Benchmark
+	public int[] doRun(EngineState state) {
+		return ProceduralAnts.doRun(numberOfAnts, stickLength, antSpeed, 0, r, state.engine);
+	}
+
+	/**
+	 * A block of runs of a campaign, reported per run. A single BATCHED
+	 * run is a STEPPED one; it only pays off over many sticks.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BatchSimulation.DEFAULT_CAPACITY)
+	public long[] doRuns(EngineState state) {
+		ProceduralAnts.doRuns(numberOfAnts, stickLength, antSpeed, 0, campaignRandom,
+				state.engine, null, 2177, nextRun, BatchSimulation.DEFAULT_CAPACITY, counts);
+		nextRun += BatchSimulation.DEFAULT_CAPACITY;
+		return counts;
+	}
+
+	/**
+	 * The stepped simulation alone, always on the same ants.
+	 * Includes copying the initial state into the work arrays.
+	 */
+	@Benchmark
+	public double[] doSimulation() {
+		System.arraycopy(initialPositions, 0, antPositions, 0, numberOfAnts);
+		System.arraycopy(initialVelocities, 0, antVelocities, 0, numberOfAnts);
+		ProceduralAnts.doSimulation(0.5 * antSpeed, numberOfAnts, stickLength, antSpeed,
+				0, antPositions, antVelocities);
+		return antVelocities;
+	}
+
+	@Benchmark
+	public double[] initializePositions() {
+		return ProceduralAnts.initializePositions(stickLength, numberOfAnts, r);
+	}
+
+	/**
+	 * SimplestAnts and ClassyAnts only have a <code>main</code>, which
+	 * uses its own stick length and speed; only numberOfAnts applies.
+	 */
+	@Benchmark
+	public void simplestAntsMain() {
+		SimplestAnts.main(mainArgs);
+	}
+
+	@Benchmark
+	public void classyAntsMain() {
+		ClassyAnts.main(mainArgs);
+	}
+}